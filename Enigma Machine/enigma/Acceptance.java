@@ -0,0 +1,372 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Runs acceptance tests such as those in testing/ within one JVM,
+ *  several at a time, in place of test-correct and test-error.  A case
+ *  is an input file F.in, whose configuration is F.conf if that exists
+ *  and otherwise default.conf in the same directory.  If F.out exists,
+ *  the case passes if Main converts F.in without error to output that
+ *  matches F.out as compared by compfiles.py (ignoring carriage
+ *  returns, trailing blanks and the lengths of runs of blanks);
+ *  otherwise it passes if Main reports an error (and does not throw
+ *  some other exception).  Input and output are held in memory.  Like
+ *  the ulimit settings of the scripts, limits on time and on the amount
+ *  of output apply to each case; both are checked whenever the case
+ *  reads or writes, and a case that stops doing either is abandoned
+ *  once it is over its time.  One line is reported per case, with its
+ *  time, followed by the slowest cases.
+ *  @author MS
+ */
+public final class Acceptance {
+
+    /** Run the cases named by ARGS, each an input file or a directory
+     *  searched for them, on --workers=N threads (by default, one per
+     *  processor), allowing each --time-limit=SECONDS (default 5) and
+     *  --output-limit=KB of output (default 100), and report on the
+     *  standard output.  Exits normally if all cases pass, and otherwise
+     *  with code 1. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--workers=([1-9]\\d*) "
+                                + "--time-limit=([1-9]\\d*) "
+                                + "--output-limit=([1-9]\\d*) "
+                                + "--=(.*){1,}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Acceptance [--workers=N] "
+                            + "[--time-limit=SECONDS] [--output-limit=KB] "
+                            + "FILE-OR-DIRECTORY...");
+            }
+            int workers = Runtime.getRuntime().availableProcessors();
+            long seconds = DEFAULT_TIME_LIMIT;
+            long kilobytes = DEFAULT_OUTPUT_LIMIT;
+            if (options.contains("--workers")) {
+                workers = Integer.parseInt(options.getLast("--workers"));
+            }
+            if (options.contains("--time-limit")) {
+                seconds = Long.parseLong(options.getLast("--time-limit"));
+            }
+            if (options.contains("--output-limit")) {
+                kilobytes = Long.parseLong(options.getLast("--output-limit"));
+            }
+            Acceptance runner =
+                new Acceptance(workers, TimeUnit.SECONDS.toMillis(seconds),
+                               kilobytes * 1024);
+            if (runner.run(findCases(options.get("--")), System.out) == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A runner using WORKERS threads that allows each case TIMELIMIT
+     *  milliseconds and OUTPUTLIMIT bytes of output. */
+    Acceptance(int workers, long timeLimit, long outputLimit) {
+        _workers = workers;
+        _timeLimit = TimeUnit.MILLISECONDS.toNanos(timeLimit);
+        _outputLimit = outputLimit;
+    }
+
+    /** Return the input files named by PATHS, or found in the
+     *  directories among them, in order of name. */
+    static List<File> findCases(List<String> paths) {
+        List<File> result = new ArrayList<>();
+        for (String name : paths) {
+            File path = new File(name);
+            if (!path.isDirectory()) {
+                result.add(path);
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(path.toPath())) {
+                result.addAll(files.filter(p -> p.toString().endsWith(".in"))
+                              .map(Path::toFile).sorted()
+                              .collect(Collectors.toList()));
+            } catch (IOException excp) {
+                throw error("could not read %s", path);
+            }
+        }
+        return result;
+    }
+
+    /** Return TEXT in the form in which outputs are compared. */
+    static String canonical(String text) {
+        return text.replace("\r", "").stripTrailing()
+            .replaceAll("(?m) +$", "").replaceAll("  +", " ");
+    }
+
+    /** Run CASES, writing a line for each to REPORT in order, followed
+     *  by a summary, and return the number that failed. */
+    int run(List<File> cases, PrintStream report) {
+        ExecutorService pool =
+            Executors.newFixedThreadPool(_workers, task -> {
+                Thread thread = new Thread(task, "enigma-acceptance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        try {
+            List<Run> runs = new ArrayList<>();
+            for (File input : cases) {
+                Run run = new Run(input);
+                run.future = pool.submit(run);
+                runs.add(run);
+            }
+            int failures = 0;
+            for (Run run : runs) {
+                String problem = await(run);
+                if (problem != null) {
+                    failures += 1;
+                }
+                report.printf("%s: %s (%d ms)%n", name(run.input),
+                              problem == null ? "OK" : "ERROR (" + problem
+                              + ")", run.millis());
+            }
+            report.printf("%d cases, %d failed%n", runs.size(), failures);
+            runs.sort(Comparator.comparingLong(Run::millis).reversed());
+            for (Run run : runs.subList(0, Math.min(SLOWEST, runs.size()))) {
+                report.printf("    %6d ms  %s%n", run.millis(),
+                              name(run.input));
+            }
+            report.flush();
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return null if the case with input file INPUT passes if started
+     *  at time START (as by System.nanoTime), and otherwise a
+     *  description of its failure. */
+    String check(File input, long start) {
+        String base = input.getPath().replaceAll("\\.in$", "");
+        File config = new File(base + ".conf");
+        if (!config.exists()) {
+            config = new File(input.getParentFile(), "default.conf");
+        }
+        File expected = new File(base + ".out");
+        long deadline = start + _timeLimit;
+        ByteArrayOutputStream output = new LimitedOutput(deadline);
+        try {
+            InputStream in = new LimitedInput(read(input), deadline);
+            Machine m = Main.configure(new Scanner(
+                new String(read(config), StandardCharsets.UTF_8)));
+            new Main(m, in, new PrintStream(output, false,
+                                            StandardCharsets.UTF_8))
+                .process();
+        } catch (EnigmaException excp) {
+            return expected.exists() ? "reported error: " + excp.getMessage()
+                : null;
+        } catch (LimitExceeded excp) {
+            return excp.getMessage();
+        } catch (RuntimeException | StackOverflowError excp) {
+            return "uncaught exception: " + excp;
+        }
+        if (!expected.exists()) {
+            return "did not report error";
+        }
+        String out = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        String want = new String(read(expected), StandardCharsets.UTF_8);
+        return canonical(out).equals(canonical(want)) ? null : "output";
+    }
+
+    /** Return the result of RUN, abandoning it if it is past its time
+     *  limit and has not stopped itself. */
+    private String await(Run run) {
+        while (true) {
+            try {
+                return run.future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException excp) {
+                if (run.started && System.nanoTime() - run.start
+                    > _timeLimit + TimeUnit.MILLISECONDS.toNanos(GRACE)) {
+                    run.future.cancel(true);
+                    return "time limit exceeded";
+                }
+            } catch (ExecutionException excp) {
+                return "uncaught exception: " + excp.getCause();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            }
+        }
+    }
+
+    /** Return the contents of FILE. */
+    private static byte[] read(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the name of the case whose input is INPUT, as reported. */
+    private static String name(File input) {
+        File dir = input.getAbsoluteFile().getParentFile();
+        return (dir == null ? "" : dir.getName() + "/") + input.getName();
+    }
+
+    /** One case, in progress or done. */
+    private class Run implements Callable<String> {
+        /** The case whose input is INPUT. */
+        Run(File input) {
+            this.input = input;
+        }
+
+        @Override
+        public String call() {
+            start = System.nanoTime();
+            started = true;
+            try {
+                return check(input, start);
+            } finally {
+                end = System.nanoTime();
+                ended = true;
+            }
+        }
+
+        /** Return the number of milliseconds I have run so far. */
+        long millis() {
+            if (!started) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis((ended ? end
+                                                  : System.nanoTime())
+                                                 - start);
+        }
+
+        /** The input file. */
+        private final File input;
+
+        /** My result, once submitted. */
+        private Future<String> future;
+
+        /** Times (as by System.nanoTime) at which I started and ended,
+         *  valid once STARTED and ENDED respectively are set. */
+        private volatile long start, end;
+
+        /** True once I have started and ended.  Each is set after the
+         *  corresponding time, so that a thread seeing it set also sees
+         *  the time. */
+        private volatile boolean started, ended;
+    }
+
+    /** Raised when a case exceeds a limit.  PrintStream passes this on,
+     *  where it would swallow an IOException. */
+    private static class LimitExceeded extends RuntimeException {
+        /** An exception with MESSAGE. */
+        LimitExceeded(String message) {
+            super(message);
+        }
+    }
+
+    /** Input that fails once the time reaches a deadline. */
+    private static class LimitedInput extends FilterInputStream {
+        /** A stream of DATA, until time DEADLINE. */
+        LimitedInput(byte[] data, long deadline) {
+            super(new ByteArrayInputStream(data));
+            _deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkTime(_deadline);
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            checkTime(_deadline);
+            return super.read(buf, off, len);
+        }
+
+        /** Time limit. */
+        private final long _deadline;
+    }
+
+    /** Output that fails once it exceeds the output limit or the time
+     *  reaches a deadline. */
+    private class LimitedOutput extends ByteArrayOutputStream {
+        /** An empty stream accepting output until time DEADLINE. */
+        LimitedOutput(long deadline) {
+            _deadline = deadline;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            check(1);
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] buf, int off, int len) {
+            check(len);
+            super.write(buf, off, len);
+        }
+
+        /** Fail if LEN more bytes would be too many or it is too late. */
+        private void check(int len) {
+            if (count + (long) len > _outputLimit) {
+                throw new LimitExceeded("too much output");
+            }
+            checkTime(_deadline);
+        }
+
+        /** Time limit. */
+        private final long _deadline;
+    }
+
+    /** Fail if the time is past DEADLINE. */
+    private static void checkTime(long deadline) {
+        if (System.nanoTime() - deadline > 0) {
+            throw new LimitExceeded("time limit exceeded");
+        }
+    }
+
+    /** Default limits, in seconds and kilobytes. */
+    private static final long DEFAULT_TIME_LIMIT = 5,
+        DEFAULT_OUTPUT_LIMIT = 100;
+
+    /** Milliseconds between checks on a case that has not finished, and
+     *  the time past its limit after which it is abandoned. */
+    private static final long POLL_MILLIS = 100, GRACE = 1000;
+
+    /** Number of slowest cases listed. */
+    private static final int SLOWEST = 5;
+
+    /** Number of worker threads. */
+    private final int _workers;
+
+    /** Nanoseconds allowed for each case. */
+    private final long _timeLimit;
+
+    /** Bytes of output allowed for each case. */
+    private final long _outputLimit;
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Acceptance class.
+ *  @author MS
+ */
+public class AcceptanceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write TEXT to the file NAME in DIR. */
+    private void write(File dir, String name, String text)
+        throws IOException {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return a new temporary directory of test cases: a, c and d (whose
+     *  own configuration is bad) pass, b has the wrong output, and e
+     *  fails to report an error. */
+    private File cases() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        dir.deleteOnExit();
+        write(dir, "default.conf", NAVAL_CONFIG);
+        write(dir, "a.in", SETTINGS + "HELLO WORLD\n");
+        write(dir, "a.out", "UIVGJ  ZUKSG   \r\n\n");
+        write(dir, "b.in", SETTINGS + "HELLO WORLD\n");
+        write(dir, "b.out", "UIVGJ ZUKSH\n");
+        write(dir, "c.in", SETTINGS + "HELLO wORLD\n");
+        write(dir, "d.in", SETTINGS + "HELLO\n");
+        write(dir, "d.conf", "ABC\n5\n");
+        write(dir, "e.in", SETTINGS + "HELLO\n");
+        return dir;
+    }
+
+    /** A settings line for NAVAL_CONFIG. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX)\n";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCanonical() {
+        assertEquals("AB CD\nEF",
+                     Acceptance.canonical("AB   CD  \r\nEF\n\n  "));
+    }
+
+    @Test
+    public void testFindCases() throws IOException {
+        File dir = cases();
+        List<File> found = Acceptance.findCases(Arrays.asList(
+            dir.getPath(), "x.in"));
+        assertEquals(6, found.size());
+        assertEquals("a.in", found.get(0).getName());
+        assertEquals("e.in", found.get(4).getName());
+        assertEquals("x.in", found.get(5).getName());
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        File dir = cases();
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        int failures = new Acceptance(3, 5000, 1024).run(
+            Acceptance.findCases(Arrays.asList(dir.getPath())),
+            new PrintStream(report, true, "UTF-8"));
+        String[] lines = report.toString("UTF-8").split("\\R");
+        assertEquals(2, failures);
+        assertTrue(lines[0], lines[0].contains("a.in: OK ("));
+        assertTrue(lines[1], lines[1].contains("b.in: ERROR (output)"));
+        assertTrue(lines[2], lines[2].contains("c.in: OK ("));
+        assertTrue(lines[3], lines[3].contains("d.in: OK ("));
+        assertTrue(lines[4],
+                   lines[4].contains("e.in: ERROR (did not report error)"));
+        assertEquals("5 cases, 2 failed", lines[5]);
+        assertEquals(11, lines.length);
+    }
+
+    @Test
+    public void testLimits() throws IOException {
+        File dir = cases();
+        File input = new File(dir, "a.in");
+        Acceptance small = new Acceptance(1, 5000, 5);
+        assertEquals("too much output",
+                     small.check(input, System.nanoTime()));
+        Acceptance slow = new Acceptance(1, 10, 1024);
+        assertEquals("time limit exceeded",
+                     slow.check(input, System.nanoTime() - 1000000000L));
+    }
+}
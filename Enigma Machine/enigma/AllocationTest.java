@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** Tests that the steady-state conversion paths allocate nothing, as
+ *  measured by the allocation counters of the threads that convert.
+ *  @author MS
+ */
+public class AllocationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the number of bytes allocated so far by this thread, or -1
+     *  if this JVM cannot tell. */
+    private static long allocated() {
+        java.lang.management.ThreadMXBean threads =
+            ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads)
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /** Return a machine for NAVAL_CONFIG. */
+    private static Machine machine() {
+        return Main.configure(new Scanner(NAVAL_CONFIG));
+    }
+
+    /** Return an input of BLOCKS blocks, each a settings line (one of
+     *  two, alternately) followed by a few messages. */
+    private static byte[] input(int blocks) {
+        StringBuilder result = new StringBuilder();
+        for (int b = 0; b < blocks; b += 1) {
+            result.append(b % 2 == 0 ? "* B Beta III IV I AXLE (HQ) (EX)\n"
+                          : "* B Beta I IV III ZZZZ\n");
+            for (int k = 0; k < 4; k += 1) {
+                result.append("FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA\n");
+            }
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the bytes this thread allocates while Main converts
+     *  INPUT. */
+    private static long allocatedByMain(byte[] input) {
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+        Main main = new Main(machine(), new ByteArrayInputStream(input),
+                             sink);
+        long before = allocated();
+        main.process();
+        return allocated() - before;
+    }
+
+    /** Return the bytes this thread and the workers of a two-worker
+     *  Pipeline allocate while it converts INPUT, or -1 if the workers'
+     *  allocation is unknown. */
+    private static long allocatedByPipeline(byte[] input) {
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+        Pipeline pipeline = new Pipeline(machine(), 2, new BlockStats());
+        long before = allocated();
+        pipeline.run(new ByteArrayInputStream(input), sink);
+        long workers = pipeline.allocatedBytes();
+        return workers < 0 ? -1 : allocated() - before + workers;
+    }
+
+    /** Bytes of allocation tolerated in a measured interval, which
+     *  covers one-time costs but not any cost per message.  Reading
+     *  the counter uses much of it, and another one-time cost (for
+     *  example, the JIT replacing compiled code) may fall in the
+     *  interval, so loops are measured over a few rounds and the least
+     *  counts: a cost per message would appear in every round. */
+    private static final long SLACK = 1024;
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMachineConvert() {
+        if (allocated() < 0) {
+            return;
+        }
+        Machine m = machine();
+        SettingsCache cache = new SettingsCache(m, 5, 4);
+        byte[] settings = "* B Beta III IV I AXLE (HQ) (EX)"
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA"
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[msg.length];
+        for (int k = 0; k < 20000; k += 1) {
+            m.setUp(cache.get(settings, 0, settings.length));
+            m.convert(msg, 0, msg.length, out, 0);
+        }
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round += 1) {
+            long before = allocated();
+            for (int k = 0; k < 20000; k += 1) {
+                m.setUp(cache.get(settings, 0, settings.length));
+                m.convert(msg, 0, msg.length, out, 0);
+            }
+            least = Math.min(least, allocated() - before);
+        }
+        assertTrue("allocated " + least + " bytes", least <= SLACK);
+    }
+
+    @Test
+    public void testPermutationAlgebra() {
+        if (allocated() < 0) {
+            return;
+        }
+        int n = 1000;
+        int[] p = new int[n], q = new int[n], out = new int[n],
+            scratch = new int[n], counts = new int[n + 1];
+        for (int k = 0; k < n; k += 1) {
+            p[k] = (k * 7 + 3) % n;
+            q[k] = n - 1 - k;
+        }
+        for (int round = 0; round < 2; round += 1) {
+            long before = allocated();
+            for (int k = 0; k < 2000; k += 1) {
+                PermutationAlgebra.composeInto(p, q, out);
+                PermutationAlgebra.inverseInto(out, scratch);
+                PermutationAlgebra.powerInto(p, k, out, scratch);
+                PermutationAlgebra.cycleTypeInto(out, counts, scratch);
+            }
+            if (round == 1) {
+                assertTrue(allocated() - before <= SLACK);
+            }
+        }
+    }
+
+    @Test
+    public void testMainBytes() {
+        if (allocated() < 0) {
+            return;
+        }
+        allocatedByMain(input(5000));
+        long small = allocatedByMain(input(100));
+        long large = allocatedByMain(input(10000));
+        assertTrue("allocated " + (large - small) + " more bytes for 9900 "
+                   + "more blocks", large - small <= SLACK);
+    }
+
+    @Test
+    public void testPipeline() {
+        if (allocated() < 0 || allocatedByPipeline(input(5000)) < 0) {
+            return;
+        }
+        long small = allocatedByPipeline(input(100));
+        long large = allocatedByPipeline(input(10000));
+        assertTrue("allocated " + (large - small) + " more bytes for 9900 "
+                   + "more blocks", large - small <= SLACK);
+    }
+}
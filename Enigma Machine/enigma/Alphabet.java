@@ -1,22 +1,108 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.error;
-import static org.junit.Assert.assertTrue;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may include supplementary characters (those
+ *  written as surrogate pairs in a String).
+ *
+ *  Finding the index of a character uses one of three structures, chosen
+ *  when the alphabet is created: a table indexed by code point when the
+ *  characters are densely packed, a perfect hash table when they are
+ *  scattered, and a sorted array searched by bisection if no perfect hash
+ *  is found.  Each takes space proportional to the size of the alphabet.
  *  @author PNH, MS
  */
 class Alphabet {
 
-    /** Characters of this alphabet. */
-    private String _chars;
+    /** The structures used to find the index of a character. */
+    enum Lookup {
+        /** A table indexed by code point minus the least code point. */
+        DENSE,
+        /** A collision-free multiplicative hash table. */
+        HASH,
+        /** Code points in increasing order, searched by bisection. */
+        SORTED
+    }
+
+    /** Code point of each character, by index. */
+    private int[] _codePoints;
+
+    /** True iff all my characters are in the Basic Multilingual Plane. */
+    private boolean _bmp;
+
+    /** Index of the character encoded by each byte value, or -1; null
+     *  unless all characters are ASCII. */
+    private int[] _byteIndex;
+
+    /** The structure used by indexOf. */
+    private Lookup _lookup;
+
+    /** For DENSE lookup, the least code point; for HASH lookup, the
+     *  multiplier. */
+    private int _base;
+
+    /** For HASH lookup, the number of bits in a table index. */
+    private int _hashBits;
+
+    /** For DENSE and HASH lookup, the index of each entry's character
+     *  (or -1); for SORTED lookup, the index of each character of
+     *  _keys. */
+    private int[] _table;
+
+    /** For HASH lookup, the code point in each slot of _table (or -1);
+     *  for SORTED lookup, my code points in increasing order. */
+    private int[] _keys;
+
+    /** Characters below this are ASCII. */
+    private static final int ASCII_LIMIT = 128;
+
+    /** Number of distinct byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** Mask converting a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** A dense table is used if it needs no more than this many entries
+     *  per character, or no more than DENSE_MIN entries. */
+    private static final int DENSE_RATIO = 4;
 
+    /** See DENSE_RATIO. */
+    private static final int DENSE_MIN = 256;
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** Number of multipliers tried for each perfect hash table size. */
+    private static final int HASH_TRIES = 32;
+
+    /** Seed for the sequence of hash multipliers, which is fixed so that
+     *  the structure chosen for an alphabet does not vary. */
+    private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+
+    /** A new alphabet containing CHARS. The K-th character (code point)
+     *  has index K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _chars = chars;
+        _codePoints = chars.codePoints().toArray();
+        _bmp = _codePoints.length == chars.length();
+        int min = Integer.MAX_VALUE, max = -1;
+        for (int cp : _codePoints) {
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+        }
+        if (max < ASCII_LIMIT) {
+            _byteIndex = new int[BYTE_VALUES];
+            Arrays.fill(_byteIndex, -1);
+            for (int i = 0; i < _codePoints.length; i += 1) {
+                _byteIndex[_codePoints[i]] = i;
+            }
+        }
+        long span = size() == 0 ? 0 : (long) max - min + 1;
+        if (span <= Math.max(DENSE_MIN, DENSE_RATIO * size())) {
+            buildDense(min, (int) span);
+        } else if (!buildHash()) {
+            buildSorted();
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -26,38 +112,164 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _codePoints.length;
     }
 
     /** Returns true if CH is in this alphabet. */
 
-    boolean myContains(char ch) {
-
-        for (int i = 0; i < _chars.length(); i++) {
-            if (_chars.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
-
+    boolean myContains(int ch) {
+        return indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  That character must be in the Basic
+     *  Multilingual Plane; use toCodePoint in general. */
     char toChar(int index) {
 
-        assertTrue(((0 <= index) && (index < size())));
-        return _chars.charAt(index);
+        assert 0 <= index && index < size();
+        return (char) _codePoints[index];
 
     }
 
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return _codePoints[index];
+    }
+
 
-    /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
-    int toInt(char ch) {
-        if (!(myContains(ch))) {
+    /** Returns the index of character (code point) CH which must be in
+     *  the alphabet. This is the inverse of toCodePoint(). */
+    int toInt(int ch) {
+        int k = indexOf(ch);
+        if (k < 0) {
             throw error("invalid message for alphabet.");
         }
-        return _chars.indexOf(ch);
+        return k;
+    }
+
+    /** Returns the index of character (code point) CH, or -1 if CH is not
+     *  in this alphabet. */
+    int indexOf(int ch) {
+        switch (_lookup) {
+        case DENSE:
+            int k = ch - _base;
+            return k >= 0 && k < _table.length ? _table[k] : -1;
+        case HASH:
+            int h = (ch * _base) >>> (Integer.SIZE - _hashBits);
+            return _keys[h] == ch ? _table[h] : -1;
+        default:
+            k = Arrays.binarySearch(_keys, ch);
+            return k >= 0 ? _table[k] : -1;
+        }
+    }
+
+    /** Returns the structure used to find the index of a character. */
+    Lookup lookup() {
+        return _lookup;
+    }
+
+    /** Returns true iff all my characters are in the Basic Multilingual
+     *  Plane, so that each is a single char in a String. */
+    boolean isBmp() {
+        return _bmp;
+    }
+
+    /** Returns true iff all my characters are ASCII, and so are each
+     *  encoded as a single byte in ASCII, ISO-8859-1 and UTF-8. */
+    boolean isSingleByte() {
+        return _byteIndex != null;
+    }
+
+    /** Returns the index of the character encoded as the single byte B,
+     *  or -1 if there is none.  Requires isSingleByte(). */
+    int byteIndex(byte b) {
+        return _byteIndex[b & BYTE_MASK];
+    }
+
+    /** Returns the single-byte encoding of character number INDEX.
+     *  Requires isSingleByte(). */
+    byte toByte(int index) {
+        return (byte) _codePoints[index];
+    }
+
+    /** Use a table of SPAN entries indexed by code point minus MIN. */
+    private void buildDense(int min, int span) {
+        _lookup = Lookup.DENSE;
+        _base = min;
+        _table = new int[span];
+        Arrays.fill(_table, -1);
+        for (int i = 0; i < _codePoints.length; i += 1) {
+            checkUnique(_table[_codePoints[i] - min]);
+            _table[_codePoints[i] - min] = i;
+        }
+    }
+
+    /** Try to find a perfect multiplicative hash of my code points into a
+     *  table of two to eight slots per character, and use it if found.
+     *  Return true iff successful. */
+    private boolean buildHash() {
+        int bits = Integer.SIZE - Integer.numberOfLeadingZeros(size());
+        long seed = HASH_SEED;
+        for (int b = bits + 1; b <= bits + 2; b += 1) {
+            int[] keys = new int[1 << b];
+            for (int t = 0; t < HASH_TRIES; t += 1) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                int mult = (int) (seed >>> Integer.SIZE) | 1;
+                Arrays.fill(keys, -1);
+                int i;
+                for (i = 0; i < _codePoints.length; i += 1) {
+                    int cp = _codePoints[i];
+                    int h = (cp * mult) >>> (Integer.SIZE - b);
+                    if (keys[h] == cp) {
+                        checkUnique(i);
+                    } else if (keys[h] >= 0) {
+                        break;
+                    }
+                    keys[h] = cp;
+                }
+                if (i == _codePoints.length) {
+                    _lookup = Lookup.HASH;
+                    _base = mult;
+                    _hashBits = b;
+                    _keys = keys;
+                    _table = new int[keys.length];
+                    for (i = 0; i < _codePoints.length; i += 1) {
+                        _table[(_codePoints[i] * mult) >>> (Integer.SIZE - b)]
+                            = i;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Use my code points in increasing order, searched by bisection. */
+    private void buildSorted() {
+        _lookup = Lookup.SORTED;
+        Integer[] order = new Integer[size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(_codePoints[a],
+                                                     _codePoints[b]));
+        _keys = new int[order.length];
+        _table = new int[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            _keys[i] = _codePoints[order[i]];
+            _table[i] = order[i];
+            if (i > 0) {
+                checkUnique(_keys[i] == _keys[i - 1] ? 0 : -1);
+            }
+        }
+    }
+
+    /** Report a duplicated character if PREVIOUS, the index already
+     *  recorded for a character, is not -1. */
+    private static void checkUnique(int previous) {
+        if (previous >= 0) {
+            throw error("duplicate character in alphabet");
+        }
     }
 }
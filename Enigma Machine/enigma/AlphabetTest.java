@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author MS
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a string of the N code points FIRST, FIRST+STEP, .... */
+    private String spaced(int first, int step, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.appendCodePoint(first + i * step);
+        }
+        return result.toString();
+    }
+
+    /** Assert that ALPHA maps each of its characters, given in order by
+     *  CHARS, to its index and back, and that MISSING is not in it. */
+    private void checkIndices(Alphabet alpha, String chars, int missing) {
+        int[] cps = chars.codePoints().toArray();
+        assertEquals(cps.length, alpha.size());
+        for (int k = 0; k < cps.length; k += 1) {
+            assertEquals(k, alpha.indexOf(cps[k]));
+            assertEquals(cps[k], alpha.toCodePoint(k));
+        }
+        assertEquals(-1, alpha.indexOf(missing));
+        assertFalse(alpha.myContains(missing));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDense() {
+        Alphabet alpha = new Alphabet("ZYXWVUTSRQPONMLKJIHGFEDCBA");
+        assertEquals(Alphabet.Lookup.DENSE, alpha.lookup());
+        checkIndices(alpha, "ZYXWVUTSRQPONMLKJIHGFEDCBA", 'a');
+        assertTrue(alpha.isSingleByte());
+        assertTrue(alpha.isBmp());
+    }
+
+    @Test
+    public void testScattered() {
+        String chars = spaced(0x4E00, 7, 3000);
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(Alphabet.Lookup.HASH, alpha.lookup());
+        checkIndices(alpha, chars, 0x4E01);
+        assertFalse(alpha.isSingleByte());
+    }
+
+    @Test
+    public void testSupplementary() {
+        String chars = "AB" + spaced(0x1F600, 1, 10) + spaced(0x10000, 1, 3);
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(15, alpha.size());
+        assertFalse(alpha.isBmp());
+        checkIndices(alpha, chars, 'C');
+        assertEquals(2, alpha.toInt(0x1F600));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test
+    public void testLargePermutation() {
+        String chars = spaced(0x3400, 1, 40000);
+        Alphabet alpha = new Alphabet(chars);
+        String cycle = "(" + chars.substring(0, 3) + chars.substring(39999)
+            + ")";
+        Permutation perm = new Permutation(cycle, alpha);
+        assertEquals(1, perm.permute(0));
+        assertEquals(39999, perm.permute(2));
+        assertEquals(0, perm.permute(39999));
+        assertEquals(39999, perm.invert(0));
+        assertEquals(500, perm.permute(500));
+    }
+
+    @Test
+    public void testSupplementaryMachine() {
+        String chars = spaced(0x1F600, 1, 4);
+        Alphabet alpha = new Alphabet(chars);
+        int[] c = chars.codePoints().toArray();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(
+            "(" + new String(c, 0, 2) + ") (" + new String(c, 2, 2) + ")",
+            alpha)));
+        rotors.add(new MovingRotor("I", new Permutation(
+            "(" + new String(c, 0, 4) + ")", alpha), new String(c, 0, 1)));
+        Machine mach = new Machine(alpha, 2, 1, rotors);
+        mach.insertRotors(new String[] { "R", "I" });
+        mach.setPlugboard(new Permutation("", alpha));
+        mach.setRotors(new String(c, 0, 1));
+        String msg = new String(c, 0, 4) + " " + new String(c, 0, 2);
+        String out = mach.convert(msg);
+        assertEquals(6, out.codePointCount(0, out.length()));
+        mach.setRotors(new String(c, 0, 1));
+        assertEquals(msg.replace(" ", ""), mach.convert(out));
+    }
+}
@@ -0,0 +1,307 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Runs many conversions in one JVM, as listed in a manifest.  Each line
+ *  of a manifest that is neither blank nor starts with '#' names a
+ *  configuration file, an input file and an output file, separated by
+ *  whitespace, which are used as by Main (gzip files included).  The
+ *  entries run concurrently on a fixed pool of workers.  Each
+ *  configuration is parsed once, however many entries name it, and the
+ *  machines built from it are kept, each with its settings cache, for
+ *  reuse by later entries.  One status line is reported per entry, in
+ *  manifest order:
+ *      LINE OK MILLIS CONFIG INPUT OUTPUT
+ *      LINE FAILED MILLIS CONFIG INPUT OUTPUT: MESSAGE
+ *  where LINE is the entry's line number in the manifest and MILLIS the
+ *  time taken to run it, followed by a summary line giving the number
+ *  of configurations parsed successfully.
+ *  @author MS
+ */
+public final class Batch {
+
+    /** Run the entries in the manifest named by ARGS, as described
+     *  above, on --workers=N workers (by default, one per processor),
+     *  reporting on the standard output.  Exits normally if every entry
+     *  succeeds, and otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--workers=([1-9]\\d*) --=(.*){1,1}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Batch [--workers=N] "
+                            + "MANIFEST");
+            }
+            int workers = Runtime.getRuntime().availableProcessors();
+            if (options.contains("--workers")) {
+                workers = Integer.parseInt(options.getLast("--workers"));
+            }
+            List<Entry> entries =
+                readManifest(new File(options.get("--").get(0)));
+            if (new Batch(workers).run(entries, System.out) == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A batch running entries on WORKERS threads. */
+    Batch(int workers) {
+        _workers = workers;
+    }
+
+    /** One conversion named in a manifest. */
+    static class Entry {
+        /** The conversion on line LINE of a manifest, of file INPUT to
+         *  file OUTPUT using configuration file CONFIG. */
+        Entry(int line, String config, String input, String output) {
+            this.line = line;
+            this.config = config;
+            this.input = input;
+            this.output = output;
+        }
+
+        /** Line number in the manifest. */
+        final int line;
+
+        /** File names. */
+        final String config, input, output;
+    }
+
+    /** Return the entries of the manifest in FILE. */
+    static List<Entry> readManifest(File file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        List<Entry> result = new ArrayList<>();
+        for (int k = 0; k < lines.size(); k += 1) {
+            String line = lines.get(k).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] names = line.split("\\s+");
+            if (names.length != 3) {
+                throw error("%s, line %d: expected CONFIG INPUT OUTPUT",
+                            file, k + 1);
+            }
+            result.add(new Entry(k + 1, names[0], names[1], names[2]));
+        }
+        return result;
+    }
+
+    /** Run ENTRIES, writing a status line for each to REPORT in order
+     *  as described above, and return the number that failed. */
+    int run(List<Entry> entries, PrintStream report) {
+        ExecutorService pool = Executors.newFixedThreadPool(_workers);
+        try {
+            List<Future<Outcome>> results = new ArrayList<>();
+            for (Entry entry : entries) {
+                results.add(pool.submit(() -> runEntry(entry)));
+            }
+            int failures = 0;
+            for (int k = 0; k < entries.size(); k += 1) {
+                Entry entry = entries.get(k);
+                Outcome outcome = await(results.get(k));
+                String problem = outcome.problem;
+                if (problem != null) {
+                    failures += 1;
+                }
+                report.printf("%d %s %d %s %s %s%s%n", entry.line,
+                              problem == null ? "OK" : "FAILED",
+                              outcome.millis, entry.config, entry.input,
+                              entry.output,
+                              problem == null ? "" : ": " + problem);
+            }
+            report.printf("%d entries, %d failed, %d configurations%n",
+                          entries.size(), failures, configurations());
+            report.flush();
+            return failures;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the number of distinct configurations parsed successfully
+     *  so far. */
+    int configurations() {
+        int result = 0;
+        for (Config config : _configs.values()) {
+            if (config.parsed()) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of machines built so far for the configuration
+     *  file NAME. */
+    int machines(String name) {
+        Config config = _configs.get(canonical(name));
+        return config == null ? 0 : config.machines();
+    }
+
+    /** Perform ENTRY, returning its outcome. */
+    private Outcome runEntry(Entry entry) {
+        long start = System.nanoTime();
+        String problem = null;
+        try {
+            Config config = _configs.computeIfAbsent(canonical(entry.config),
+                                                     Config::new);
+            Session session = config.checkOut();
+            try {
+                new Main(session.machine, session.cache, entry.input,
+                         entry.output).process();
+            } finally {
+                config.idle.add(session);
+            }
+        } catch (EnigmaException excp) {
+            problem = excp.getMessage();
+        }
+        return new Outcome((System.nanoTime() - start) / 1_000_000, problem);
+    }
+
+    /** Return the result of RESULT, once available, or an outcome
+     *  describing the unexpected exception that ended it. */
+    private static Outcome await(Future<Outcome> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException excp) {
+            return new Outcome(0, excp.getCause().toString());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** The result of running an entry. */
+    private static class Outcome {
+        /** An entry that took MILLIS milliseconds and failed with
+         *  PROBLEM, or succeeded if PROBLEM is null. */
+        Outcome(long millis, String problem) {
+            this.millis = millis;
+            this.problem = problem;
+        }
+
+        /** Elapsed time in milliseconds. */
+        private final long millis;
+
+        /** Error message, or null if the entry succeeded. */
+        private final String problem;
+    }
+
+    /** Return a name identifying the file NAME regardless of how it is
+     *  written. */
+    private static String canonical(String name) {
+        File file = new File(name);
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException excp) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /** A configuration file, parsed on first use. */
+    private static class Config {
+        /** The configuration in the file named NAME. */
+        Config(String name) {
+            _name = name;
+        }
+
+        /** Return a machine and settings cache for my configuration not
+         *  in use by any entry, creating one if needed. */
+        Session checkOut() {
+            Session result = idle.poll();
+            return result != null ? result : new Session(prototype().copy());
+        }
+
+        /** Return true iff my file has been parsed without error. */
+        synchronized boolean parsed() {
+            return _prototype != null;
+        }
+
+        /** Return the number of machines built from my prototype. */
+        synchronized int machines() {
+            return _copies;
+        }
+
+        /** Return the machine parsed from my file, parsing it only the
+         *  first time, and counting the copy about to be made of it. */
+        private synchronized Machine prototype() {
+            if (_prototype == null && _problem == null) {
+                try (Scanner config = new Scanner(new File(_name))) {
+                    _prototype = Main.configure(config);
+                } catch (IOException excp) {
+                    _problem = error("could not open %s", _name);
+                } catch (EnigmaException excp) {
+                    _problem = excp;
+                }
+            }
+            if (_problem != null) {
+                throw error("%s", _problem.getMessage());
+            }
+            _copies += 1;
+            return _prototype;
+        }
+
+        /** Sessions not in use by any entry. */
+        private final Queue<Session> idle = new ConcurrentLinkedQueue<>();
+
+        /** Name of my file. */
+        private final String _name;
+
+        /** Machine parsed from my file, copied for each new session. */
+        private Machine _prototype;
+
+        /** The error from parsing my file, if it failed. */
+        private EnigmaException _problem;
+
+        /** Number of sessions created. */
+        private int _copies;
+    }
+
+    /** A machine and its settings cache, used by one entry at a time. */
+    private static class Session {
+        /** A session converting with MACHINE. */
+        Session(Machine machine) {
+            this.machine = machine;
+            this.cache = new SettingsCache(machine, machine.rotorSlots(),
+                                           SettingsCache.DEFAULT_CAPACITY);
+        }
+
+        /** The machine. */
+        private final Machine machine;
+
+        /** Parsed settings lines for machine. */
+        private final SettingsCache cache;
+    }
+
+    /** Number of worker threads. */
+    private final int _workers;
+
+    /** Configurations by canonical file name. */
+    private final Map<String, Config> _configs = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author MS
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file containing TEXT. */
+    private File tempFile(String text) throws IOException {
+        File file = File.createTempFile("enigma", ".tmp");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Return the contents of FILE. */
+    private String contents(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** A settings line for NAVAL_CONFIG. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX)\n";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testManifest() throws IOException {
+        File manifest = tempFile("# comment\n\n  a b c\nd e f\n");
+        List<Batch.Entry> entries = Batch.readManifest(manifest);
+        assertEquals(2, entries.size());
+        assertEquals(3, entries.get(0).line);
+        assertEquals("b", entries.get(0).input);
+        assertEquals("f", entries.get(1).output);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadManifest() throws IOException {
+        Batch.readManifest(tempFile("a b\n"));
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        String config = tempFile(NAVAL_CONFIG).getPath();
+        String missing = config + ".missing";
+        File[] outputs = new File[8];
+        StringBuilder manifest = new StringBuilder();
+        for (int k = 0; k < outputs.length; k += 1) {
+            outputs[k] = tempFile("");
+            String input = tempFile(SETTINGS + (k == 5 ? "HELLO wORLD\n"
+                                                : "HELLO WORLD\n")).getPath();
+            manifest.append(k == 6 ? missing : config).append(' ')
+                .append(input).append(' ').append(outputs[k]).append('\n');
+        }
+        Batch batch = new Batch(3);
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        int failures = batch.run(
+            Batch.readManifest(tempFile(manifest.toString())),
+            new PrintStream(report, true, "UTF-8"));
+        assertEquals(2, failures);
+        String[] lines = report.toString("UTF-8").split("\\R");
+        assertEquals(9, lines.length);
+        for (int k = 0; k < outputs.length; k += 1) {
+            String[] fields = lines[k].split(" ");
+            assertEquals(Integer.toString(k + 1), fields[0]);
+            assertTrue(lines[k], fields[2].matches("\\d+"));
+            assertEquals(k == 6 ? missing : config, fields[3]);
+            if (k == 5 || k == 6) {
+                assertEquals(lines[k], "FAILED", fields[1]);
+            } else {
+                assertEquals(lines[k], "OK", fields[1]);
+                assertEquals("UIVGJ ZUKSG" + System.lineSeparator(),
+                             contents(outputs[k]));
+            }
+        }
+        assertEquals("8 entries, 2 failed, 1 configurations", lines[8]);
+        assertEquals(1, batch.configurations());
+        assertTrue(batch.machines(config) >= 1);
+        assertTrue(batch.machines(config) <= 3);
+    }
+}
@@ -0,0 +1,360 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A benchmark of Main on a synthetic workload, for sizing hardware.  It
+ *  generates a configuration with a random rotor library and a corpus of
+ *  random messages, then repeatedly runs Main.process over the corpus in
+ *  memory, reporting for each run the characters and messages converted
+ *  per second, the median and 99th-percentile time per message line (from
+ *  Metrics, unless metrics=0) and the rate at which the converting thread
+ *  allocated memory (not available with --pipeline, whose workers are
+ *  threads of their own).
+ *  The workload is described by a list of NAME=VALUE parameters separated
+ *  by commas, any of which may be omitted:
+ *      alphabet  number of characters in the alphabet (26)
+ *      slots     number of rotor slots, at most 9 (5)
+ *      pawls     number of pawls, at least 1 and less than slots (3)
+ *      library   number of rotors available (12)
+ *      keys      number of distinct settings lines used (64)
+ *      chars     number of message characters in the corpus (4000000)
+ *      line      number of characters per message line (60)
+ *      block     number of message lines per settings line (100)
+ *      runs      number of runs, the first being warm-up (3)
+ *      seed      seed of the random generator (1)
+ *      keystream megabytes of keystreams remembered, or 0 for none (0)
+ *      metrics   1 to record Metrics during runs, 0 not to, for
+ *                measuring what recording costs (1)
+ *  Alphabets of up to 91 characters are printable ASCII, and so are
+ *  converted as bytes; larger ones continue with CJK ideographs, and so
+ *  need a default charset (such as UTF-8) that can encode them.
+ *  @author MS
+ */
+class Bench {
+
+    /** Run the benchmark described by SPEC, as above, writing the report
+     *  to REPORT. */
+    static void run(String spec, PrintStream report) {
+        Bench bench = new Bench(spec);
+        report.printf("workload: alphabet %d, %d slots, %d pawls, %d rotors, "
+                      + "%d keys, %d chars in lines of %d, %d lines per "
+                      + "block%n", bench._alphabet, bench._slots,
+                      bench._pawls, bench._library, bench._keys,
+                      bench._chars, bench._line, bench._block);
+        long start = System.nanoTime();
+        Machine machine = Main.configure(new Scanner(bench.config()));
+        report.printf("config: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        if (bench._keystream > 0) {
+            machine.cacheKeystreams(bench._keystream << 20);
+        }
+        byte[] corpus = bench.corpus(machine);
+        report.printf("corpus: %d bytes%n", corpus.length);
+        if (bench._metrics) {
+            Metrics.enable();
+        }
+        for (int r = 0; r < bench._runs; r += 1) {
+            bench.measure(machine, corpus, r == 0 ? "warm-up"
+                          : "run " + r, report);
+        }
+    }
+
+    /** A benchmark of the workload described by SPEC. */
+    Bench(String spec) {
+        for (String param : spec.split(",")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            long value;
+            try {
+                value = Long.parseLong(param.substring(eq + 1));
+            } catch (NumberFormatException excp) {
+                throw error("bad workload parameter %s", param);
+            }
+            if (eq < 0 || value < 0) {
+                throw error("bad workload parameter %s", param);
+            }
+            switch (param.substring(0, eq)) {
+            case "alphabet":
+                _alphabet = (int) value;
+                break;
+            case "slots":
+                _slots = (int) value;
+                break;
+            case "pawls":
+                _pawls = (int) value;
+                break;
+            case "library":
+                _library = (int) value;
+                break;
+            case "keys":
+                _keys = (int) value;
+                break;
+            case "chars":
+                _chars = value;
+                break;
+            case "line":
+                _line = (int) value;
+                break;
+            case "block":
+                _block = (int) value;
+                break;
+            case "runs":
+                _runs = (int) value;
+                break;
+            case "seed":
+                _seed = value;
+                break;
+            case "keystream":
+                _keystream = value;
+                break;
+            case "metrics":
+                if (value > 1) {
+                    throw error("bad workload parameter %s", param);
+                }
+                _metrics = value == 1;
+                break;
+            default:
+                throw error("unknown workload parameter %s", param);
+            }
+        }
+        if (_alphabet < 2 || _alphabet > MAX_ALPHABET) {
+            throw error("alphabet size must be between 2 and %d",
+                        MAX_ALPHABET);
+        }
+        if (_slots < 2 || _slots > MAX_SLOTS || _pawls < 1
+            || _pawls >= _slots) {
+            throw error("need 2 to %d slots and at least 1 pawl but fewer "
+                        + "pawls than slots", MAX_SLOTS);
+        }
+        if (_library < _slots || _keys < 1 || _line < 1 || _block < 1) {
+            throw error("bad workload");
+        }
+    }
+
+    /** Return the text of my configuration.  It has one reflector,
+     *  SLOTS-PAWLS-1 fixed rotors, and moving rotors for the rest of the
+     *  library, each with a random permutation and up to two notches. */
+    String config() {
+        Random random = new Random(_seed);
+        List<Integer> chars = alphabet();
+        StringBuilder result = new StringBuilder();
+        for (int c : chars) {
+            result.appendCodePoint(c);
+        }
+        result.append('\n').append(_slots).append(' ').append(_pawls)
+            .append('\n');
+        List<Integer> shuffled = new ArrayList<>(chars);
+        Collections.shuffle(shuffled, random);
+        result.append("R0 R");
+        for (int k = 0; k + 1 < shuffled.size(); k += 2) {
+            appendCycle(result, shuffled.subList(k, k + 2));
+        }
+        result.append('\n');
+        int fixed = _slots - _pawls - 1;
+        for (int r = 1; r < _library; r += 1) {
+            result.append(rotorName(r)).append(' ');
+            if (r <= fixed) {
+                result.append('N');
+            } else {
+                result.append('M');
+                for (int n = 0; n <= r % 2; n += 1) {
+                    result.appendCodePoint(chars.get(random.nextInt(
+                        chars.size())));
+                }
+            }
+            Collections.shuffle(shuffled, random);
+            appendCycles(result, shuffled);
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return my corpus for MACHINE, configured from config(): blocks of
+     *  message lines, each headed by one of my settings lines, to a total
+     *  of about _chars message characters, encoded in the default charset
+     *  (as Main decodes it). */
+    byte[] corpus(Machine machine) {
+        Charset charset = Charset.defaultCharset();
+        if (!charset.newEncoder().canEncode(config())) {
+            throw error("an alphabet of %d characters cannot be encoded in "
+                        + "%s", _alphabet, charset);
+        }
+        Random random = new Random(_seed + 1);
+        String[] keys = new String[_keys];
+        for (int k = 0; k < keys.length; k += 1) {
+            keys[k] = settingsLine(random);
+        }
+        StringBuilder result = new StringBuilder();
+        Alphabet alpha = machine.alphabet();
+        for (long n = 0; n < _chars; ) {
+            result.append(keys[random.nextInt(keys.length)]).append('\n');
+            for (int k = 0; k < _block && n < _chars; k += 1) {
+                for (int i = 0; i < _line && n < _chars; i += 1, n += 1) {
+                    if (i > 0 && i % 5 == 0) {
+                        result.append(' ');
+                    }
+                    result.appendCodePoint(alpha.toCodePoint(
+                        random.nextInt(alpha.size())));
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString().getBytes(charset);
+    }
+
+    /** Run Main on MACHINE over CORPUS once, reporting the results for a
+     *  run called NAME on REPORT. */
+    private void measure(Machine machine, byte[] corpus, String name,
+                         PrintStream report) {
+        Metrics.get().reset();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean pipelined = Main.pipelineWorkers() > 0;
+        long allocated = pipelined ? -1 : allocatedBytes(threads);
+        long start = System.nanoTime();
+        Main main = new Main(machine, new ByteArrayInputStream(corpus),
+                             new PrintStream(OutputStream.nullOutputStream()));
+        main.process();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long bytes = allocated < 0 ? -1
+            : allocatedBytes(threads) - allocated;
+        BlockStats stats = main.stats();
+        Metrics metrics = Metrics.get();
+        String latency = !Metrics.enabled() ? "n/a"
+            : String.format("p50 %.2f us, p99 %.2f us",
+                            metrics.getMessageLatencyP50(),
+                            metrics.getMessageLatencyP99());
+        report.printf("%s: %.0f chars/s, %.0f messages/s, message latency "
+                      + "%s, allocation %s%n", name,
+                      stats.chars() / seconds, stats.messages() / seconds,
+                      latency,
+                      bytes < 0 ? "n/a"
+                      : String.format("%.1f MB/s", bytes / seconds / 1e6));
+    }
+
+    /** Return the bytes allocated so far by the current thread, according
+     *  to THREADS, or -1 if that is unknown. */
+    static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /** Return a random settings line for my configuration, using RANDOM. */
+    private String settingsLine(Random random) {
+        StringBuilder result = new StringBuilder("* R0");
+        int fixed = _slots - _pawls - 1;
+        List<Integer> moving = new ArrayList<>();
+        for (int r = fixed + 1; r < _library; r += 1) {
+            moving.add(r);
+        }
+        Collections.shuffle(moving, random);
+        for (int r = 1; r <= fixed; r += 1) {
+            result.append(' ').append(rotorName(r));
+        }
+        for (int r = 0; r < _pawls; r += 1) {
+            result.append(' ').append(rotorName(moving.get(r)));
+        }
+        List<Integer> chars = alphabet();
+        result.append(' ');
+        for (int k = 1; k < _slots; k += 1) {
+            result.appendCodePoint(chars.get(random.nextInt(chars.size())));
+        }
+        Collections.shuffle(chars, random);
+        int plugs = Math.min(MAX_PLUGS, chars.size() / 2);
+        for (int k = 0; k < plugs; k += 1) {
+            appendCycle(result, chars.subList(2 * k, 2 * k + 2));
+        }
+        return result.toString();
+    }
+
+    /** Return the code points of my alphabet. */
+    private List<Integer> alphabet() {
+        List<Integer> result = new ArrayList<>();
+        for (int c = '!'; c <= '~' && result.size() < _alphabet; c += 1) {
+            if (c != '(' && c != ')' && c != '*') {
+                result.add(c);
+            }
+        }
+        for (int c = CJK_START; result.size() < _alphabet; c += 1) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    /** Append to OUT the cycles of a random permutation of the
+     *  characters in SHUFFLED, formed by cutting that list at random
+     *  points. */
+    private static void appendCycles(StringBuilder out,
+                                     List<Integer> shuffled) {
+        Random random = new Random(shuffled.get(0));
+        int start = 0;
+        for (int k = 1; k <= shuffled.size(); k += 1) {
+            if (k == shuffled.size() || random.nextInt(CYCLE_CUT) == 0) {
+                appendCycle(out, shuffled.subList(start, k));
+                start = k;
+            }
+        }
+    }
+
+    /** Append the cycle of the characters in CYCLE to OUT. */
+    private static void appendCycle(StringBuilder out, List<Integer> cycle) {
+        out.append(" (");
+        for (int c : cycle) {
+            out.appendCodePoint(c);
+        }
+        out.append(')');
+    }
+
+    /** Return the name of rotor number R of my library. */
+    private static String rotorName(int r) {
+        return "R" + r;
+    }
+
+    /** Largest alphabet generated: the printable ASCII characters allowed
+     *  in alphabets, then CJK Unified Ideographs Extension A. */
+    private static final int MAX_ALPHABET = 91 + 6592;
+
+    /** First code point used beyond ASCII. */
+    private static final int CJK_START = 0x3400;
+
+    /** Largest number of slots a configuration can describe. */
+    private static final int MAX_SLOTS = 9;
+
+    /** Largest number of plugboard pairs in a settings line. */
+    private static final int MAX_PLUGS = 10;
+
+    /** A cycle is ended after each character with probability
+     *  1/CYCLE_CUT. */
+    private static final int CYCLE_CUT = 8;
+
+    /** Workload parameters (see above). */
+    private int _alphabet = 26, _slots = 5, _pawls = 3, _library = 12,
+        _keys = 64, _line = 60, _block = 100, _runs = 3;
+
+    /** Number of message characters in the corpus. */
+    private long _chars = 4000000;
+
+    /** Seed of the random generator. */
+    private long _seed = 1;
+
+    /** Megabytes of keystreams remembered. */
+    private long _keystream;
+
+    /** True iff Metrics are recorded during runs. */
+    private boolean _metrics = true;
+}
@@ -0,0 +1,77 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Bench class.
+ *  @author MS
+ */
+public class BenchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConfig() {
+        Bench bench = new Bench("alphabet=40,slots=6,pawls=4,library=9");
+        Machine m = Main.configure(new Scanner(bench.config()));
+        assertEquals(40, m.alphabet().size());
+        assertEquals(6, m.rotorSlots());
+        assertEquals(4, m.numPawls());
+        assertEquals(9, m.numAvailableRotors());
+        assertTrue(m.availableRotor(0).reflecting());
+        assertFalse(m.availableRotor(1).rotates());
+        assertTrue(m.availableRotor(2).rotates());
+        assertEquals(bench.config(), new Bench("alphabet=40,slots=6,"
+                                               + "pawls=4,library=9")
+                     .config());
+    }
+
+    @Test
+    public void testCorpus() {
+        Bench bench = new Bench("chars=1000,line=10,block=7,keys=3");
+        Machine m = Main.configure(new Scanner(bench.config()));
+        String[] lines = new String(bench.corpus(m)).split("\n");
+        assertEquals(100 + 15, lines.length);
+        assertTrue(Main.isSettingsLine(lines[0]));
+        assertEquals("ABCDE FGHIJ".length(), lines[1].length());
+        assertTrue(Main.isSettingsLine(lines[8]));
+        assertFalse(Main.isSettingsLine(lines[9]));
+    }
+
+    @Test
+    public void testRun() throws UnsupportedEncodingException {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Bench.run("chars=20000,runs=2", new PrintStream(report, true,
+                                                        "UTF-8"));
+        String[] lines = report.toString("UTF-8").split("\\R");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("workload: alphabet 26"));
+        assertTrue(lines[3], lines[3].startsWith("warm-up: "));
+        assertTrue(lines[4], lines[4].matches("run 1: \\d+ chars/s, \\d+ "
+                                              + "messages/s, .*"));
+    }
+
+    @Test
+    public void testBadWorkload() {
+        for (String spec : new String[] { "slots=3,pawls=3", "pawls=0",
+                                          "slots=1" }) {
+            try {
+                new Bench(spec);
+                fail(spec + " accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage(),
+                           excp.getMessage().contains("at least 1 pawl"));
+            }
+        }
+    }
+}
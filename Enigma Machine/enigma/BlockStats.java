@@ -0,0 +1,114 @@
+package enigma;
+
+/** Running throughput statistics over the message blocks processed by
+ *  Main, where a block is a settings line and the message lines that
+ *  follow it.  Only totals and the most recent block are kept, so the
+ *  space used does not depend on the number of blocks.
+ *  @author MS
+ */
+class BlockStats {
+
+    /** Begin timing a new block. */
+    void startBlock() {
+        _blockStart = System.nanoTime();
+        _blockChars = 0;
+        _blockMessages = 0;
+    }
+
+    /** Record a converted message of CHARS characters in the current
+     *  block. */
+    void addMessage(int chars) {
+        _blockChars += chars;
+        _blockMessages += 1;
+    }
+
+    /** Finish the current block, folding it into the totals. */
+    void endBlock() {
+        _lastNanos = System.nanoTime() - _blockStart;
+        _lastChars = _blockChars;
+        _lastMessages = _blockMessages;
+        _blocks += 1;
+        _chars += _blockChars;
+        _messages += _blockMessages;
+        _nanos += _lastNanos;
+        _maxNanos = Math.max(_maxNanos, _lastNanos);
+    }
+
+    /** Fold the completed blocks of OTHER into my totals. */
+    void add(BlockStats other) {
+        _blocks += other._blocks;
+        _chars += other._chars;
+        _messages += other._messages;
+        _nanos += other._nanos;
+        _maxNanos = Math.max(_maxNanos, other._maxNanos);
+    }
+
+    /** Return the number of completed blocks. */
+    long blocks() {
+        return _blocks;
+    }
+
+    /** Return the number of message lines in completed blocks. */
+    long messages() {
+        return _messages;
+    }
+
+    /** Return the number of characters converted in completed blocks. */
+    long chars() {
+        return _chars;
+    }
+
+    /** Return the total time spent in completed blocks, in nanoseconds. */
+    long nanos() {
+        return _nanos;
+    }
+
+    /** Return the number of characters converted in the last completed
+     *  block. */
+    long lastBlockChars() {
+        return _lastChars;
+    }
+
+    /** Return the number of message lines in the last completed block. */
+    long lastBlockMessages() {
+        return _lastMessages;
+    }
+
+    /** Return the time taken by the last completed block, in
+     *  nanoseconds. */
+    long lastBlockNanos() {
+        return _lastNanos;
+    }
+
+    /** Return the time taken by the slowest completed block, in
+     *  nanoseconds. */
+    long maxBlockNanos() {
+        return _maxNanos;
+    }
+
+    /** Return the overall conversion rate in characters per second. */
+    double charsPerSecond() {
+        return _nanos == 0 ? 0.0 : _chars * 1e9 / _nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d blocks, %d messages, %d chars in %.3f ms "
+                             + "(%.0f chars/s, slowest block %.3f ms)",
+                             _blocks, _messages, _chars, _nanos / 1e6,
+                             charsPerSecond(), _maxNanos / 1e6);
+    }
+
+    /** Completed blocks, messages and characters. */
+    private long _blocks, _messages, _chars;
+
+    /** Total and maximum nanoseconds over completed blocks. */
+    private long _nanos, _maxNanos;
+
+    /** Characters, messages and nanoseconds of the last completed
+     *  block. */
+    private long _lastChars, _lastMessages, _lastNanos;
+
+    /** Start time, characters and messages of the current block. */
+    private long _blockStart, _blockChars, _blockMessages;
+}
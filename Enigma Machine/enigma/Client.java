@@ -0,0 +1,154 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A client for Server that behaves like Main, except that the
+ *  conversion is done by the server.  Each line goes to the server in a
+ *  request of its own, so that output and errors match Main's line for
+ *  line, and blocks of any length can be converted.
+ *  @author MS
+ */
+public final class Client implements AutoCloseable {
+
+    /** Convert messages as Main does, using the server at ARGS[0] (see
+     *  Server.main) and its configuration named ARGS[1].  ARGS[2] and
+     *  ARGS[3], when present, name the input and output files as for
+     *  Main.  Exits normally if there are no errors in the input;
+     *  otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs("--=(.*){2,4}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Client ADDRESS CONFIG "
+                            + "[INPUT [OUTPUT]]");
+            }
+            List<String> names = options.get("--");
+            Scanner input = new Scanner(System.in);
+            PrintStream output = System.out;
+            try {
+                if (names.size() > 2) {
+                    input = new Scanner(new File(names.get(2)));
+                }
+                if (names.size() > 3) {
+                    output = new PrintStream(new File(names.get(3)));
+                }
+            } catch (IOException excp) {
+                throw error("could not open %s", excp.getMessage());
+            }
+            try (Client client = new Client(names.get(0))) {
+                client.process(names.get(1), input, output);
+            } finally {
+                output.flush();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A client connected to the server at ADDRESS. */
+    Client(String address) {
+        try {
+            if (address.startsWith("unix:")) {
+                _channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                _channel.connect(
+                    UnixDomainSocketAddress.of(Path.of(address.substring(5))));
+            } else if (address.startsWith("tcp:")) {
+                _channel = SocketChannel.open(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          Integer.parseInt(
+                                              address.substring(4))));
+            } else {
+                throw error("bad server address: %s", address);
+            }
+        } catch (IOException | NumberFormatException excp) {
+            throw error("could not connect to %s", address);
+        }
+        _in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(_channel)));
+        _out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(_channel)));
+    }
+
+    /** Convert the message blocks in INPUT with the server's
+     *  configuration CONFIG, writing the results to OUTPUT as Main
+     *  would. */
+    void process(String config, Scanner input, PrintStream output) {
+        boolean inBlock = false;
+        while (input.hasNextLine()) {
+            String line = input.nextLine();
+            if (!inBlock && line.isEmpty()) {
+                output.println();
+            } else if (!inBlock || Main.isSettingsLine(line)) {
+                convert(config, line, "");
+                inBlock = true;
+            } else {
+                output.print(convert(config, "", line + "\n"));
+            }
+        }
+    }
+
+    /** Return the server's conversion of MESSAGE, a sequence of lines
+     *  each terminated by '\n', with configuration CONFIG and settings
+     *  line SETTINGS, or continuing the previous conversion if SETTINGS
+     *  is empty. */
+    String convert(String config, String settings, String message) {
+        try {
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            _out.writeUTF(config);
+            _out.writeUTF(settings);
+            _out.writeInt(text.length);
+            _out.write(text);
+            _out.flush();
+            byte status = _in.readByte();
+            byte[] reply = new byte[_in.readInt()];
+            _in.readFully(reply);
+            String result = new String(reply, StandardCharsets.UTF_8);
+            if (status != Server.OK) {
+                throw error("%s", result);
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("lost connection to server");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            /* Ignore: nothing more will be sent. */
+        }
+    }
+
+    /** Connection to the server. */
+    private final SocketChannel _channel;
+
+    /** Streams over _channel. */
+    private final DataInputStream _in;
+
+    /** Streams over _channel. */
+    private final DataOutputStream _out;
+}
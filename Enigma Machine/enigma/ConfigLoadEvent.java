@@ -0,0 +1,37 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight recorder event covering the parsing of one machine
+ *  configuration.  Disabled unless turned on in the recording settings
+ *  (e.g. enigma.ConfigLoad#enabled=true).
+ *  @author MS
+ */
+@Name("enigma.ConfigLoad")
+@Label("Config Load")
+@Category("Enigma")
+@Description("Parsing of a machine configuration")
+@Enabled(false)
+class ConfigLoadEvent extends Event {
+
+    /** Number of characters in the alphabet. */
+    @Label("Alphabet Size")
+    int alphabetSize;
+
+    /** Number of rotor slots. */
+    @Label("Rotor Slots")
+    int rotorSlots;
+
+    /** Number of pawls. */
+    @Label("Pawls")
+    int pawls;
+
+    /** Number of rotors described. */
+    @Label("Rotors Available")
+    int rotorsAvailable;
+}
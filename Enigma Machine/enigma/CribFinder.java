@@ -0,0 +1,157 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the offsets at which a crib (suspected plaintext) may lie
+ *  against a ciphertext.  Since an Enigma machine never encrypts a
+ *  letter to itself, an offset is ruled out if any crib letter falls
+ *  opposite the same ciphertext letter.  The ciphertext is held as one
+ *  bitset of positions per letter, so each crib letter rules out its
+ *  offsets 64 at a time: offset O is ruled out by crib letter J iff
+ *  bit O+J of the bitset of CRIB[J] is set, so shifting that bitset
+ *  right by J and or'ing the results over the crib gives every bad
+ *  offset at once.  For each offset that survives, the finder also
+ *  counts the loops of the crib's menu (the graph with an edge between
+ *  each crib letter and the ciphertext letter opposite it): its number
+ *  of independent cycles, edges - vertices + components.  Menus with
+ *  more loops constrain a search more, so those offsets are the best
+ *  to try first.  Texts are arrays of alphabet indices (see indices).
+ *  @author MS
+ */
+class CribFinder {
+
+    /** A finder for cribs in CIPHER, a text in ALPHABET. */
+    CribFinder(Alphabet alphabet, int[] cipher) {
+        _cipher = cipher.clone();
+        _size = alphabet.size();
+        int words = (cipher.length + 63) >>> 6;
+        _positions = new long[_size][words];
+        for (int i = 0; i < cipher.length; i += 1) {
+            int c = cipher[i];
+            if (c < 0 || c >= _size) {
+                throw error("ciphertext character out of range");
+            }
+            _positions[c][i >>> 6] |= 1L << i;
+        }
+        _parent = new int[_size];
+        _present = new boolean[_size];
+    }
+
+    /** Return the alphabet indices of the characters of TEXT, which must
+     *  be in ALPHABET, ignoring whitespace. */
+    static int[] indices(Alphabet alphabet, String text) {
+        return text.codePoints().filter(c -> !Character.isWhitespace(c))
+            .map(alphabet::toInt).toArray();
+    }
+
+    /** Return the number of offsets at which CRIB may lie, storing them
+     *  in increasing order in OFFSETS and the loop count of each in the
+     *  corresponding element of LOOPS.  OFFSETS and LOOPS must have room
+     *  for every possible offset: one more than the difference in length
+     *  of the ciphertext and CRIB. */
+    int find(int[] crib, int[] offsets, int[] loops) {
+        int last = _cipher.length - crib.length;
+        if (last < 0) {
+            return 0;
+        }
+        long[] bad = badOffsets(crib, last);
+        int count = 0;
+        for (int w = 0; w < bad.length; w += 1) {
+            long good = ~bad[w];
+            if (w == bad.length - 1 && ((last + 1) & 63) != 0) {
+                good &= (1L << (last + 1)) - 1;
+            }
+            while (good != 0) {
+                int offset = (w << 6) + Long.numberOfTrailingZeros(good);
+                offsets[count] = offset;
+                loops[count] = loops(crib, offset);
+                count += 1;
+                good &= good - 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return true iff CRIB may lie at OFFSET. */
+    boolean admissible(int[] crib, int offset) {
+        if (offset < 0 || offset + crib.length > _cipher.length) {
+            return false;
+        }
+        for (int j = 0; j < crib.length; j += 1) {
+            if (_cipher[offset + j] == crib[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of loops in the menu of CRIB at OFFSET. */
+    int loops(int[] crib, int offset) {
+        for (int c = 0; c < _size; c += 1) {
+            _parent[c] = c;
+            _present[c] = false;
+        }
+        int vertices = 0, components = 0;
+        for (int j = 0; j < crib.length; j += 1) {
+            int a = crib[j], b = _cipher[offset + j];
+            if (!_present[a]) {
+                _present[a] = true;
+                vertices += 1;
+                components += 1;
+            }
+            if (!_present[b]) {
+                _present[b] = true;
+                vertices += 1;
+                components += 1;
+            }
+            int ra = root(a), rb = root(b);
+            if (ra != rb) {
+                _parent[ra] = rb;
+                components -= 1;
+            }
+        }
+        return crib.length - vertices + components;
+    }
+
+    /** Return a bitset with bit O set for each offset O <= LAST at which
+     *  CRIB cannot lie. */
+    private long[] badOffsets(int[] crib, int last) {
+        int words = (last >>> 6) + 1;
+        long[] bad = new long[words];
+        for (int j = 0; j < crib.length; j += 1) {
+            long[] pos = _positions[crib[j]];
+            int q = j >>> 6, r = j & 63;
+            for (int w = 0; w < words; w += 1) {
+                long lo = pos[w + q];
+                long hi = w + q + 1 < pos.length ? pos[w + q + 1] : 0;
+                bad[w] |= r == 0 ? lo : (lo >>> r) | (hi << (64 - r));
+            }
+        }
+        return bad;
+    }
+
+    /** Return the representative of the set containing C, compressing
+     *  the path to it. */
+    private int root(int c) {
+        while (_parent[c] != c) {
+            _parent[c] = _parent[_parent[c]];
+            c = _parent[c];
+        }
+        return c;
+    }
+
+    /** The ciphertext. */
+    private final int[] _cipher;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** For each letter, a bitset of its positions in _cipher. */
+    private final long[][] _positions;
+
+    /** Union-find parents of letters, used by loops. */
+    private final int[] _parent;
+
+    /** Letters appearing in the menu, used by loops. */
+    private final boolean[] _present;
+}
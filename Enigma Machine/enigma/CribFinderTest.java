@@ -0,0 +1,115 @@
+package enigma;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CribFinder class.
+ *  @author MS
+ */
+public class CribFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an array of N random indices below SIZE from RANDOM. */
+    private int[] randomText(int n, int size, Random random) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = random.nextInt(size);
+        }
+        return result;
+    }
+
+    /** The upper-case alphabet. */
+    private final Alphabet alpha = new Alphabet();
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSmall() {
+        CribFinder finder =
+            new CribFinder(alpha, CribFinder.indices(alpha, "XB AY"));
+        int[] crib = CribFinder.indices(alpha, "AB");
+        int[] offsets = new int[3], loops = new int[3];
+        assertEquals(1, finder.find(crib, offsets, loops));
+        assertEquals(1, offsets[0]);
+        assertEquals(1, loops[0]);
+        assertFalse(finder.admissible(crib, 0));
+        assertTrue(finder.admissible(crib, 1));
+        assertFalse(finder.admissible(crib, 2));
+        assertFalse(finder.admissible(crib, 3));
+    }
+
+    @Test
+    public void testLoops() {
+        CribFinder finder =
+            new CribFinder(alpha, CribFinder.indices(alpha, "BCAZ"));
+        assertEquals(1, finder.loops(CribFinder.indices(alpha, "ABC"), 0));
+        assertEquals(0, finder.loops(CribFinder.indices(alpha, "ABD"), 0));
+        assertEquals(0, finder.loops(CribFinder.indices(alpha, "Y"), 3));
+        finder = new CribFinder(alpha, CribFinder.indices(alpha, "BABA"));
+        assertEquals(3, finder.loops(CribFinder.indices(alpha, "ABAB"), 0));
+    }
+
+    @Test
+    public void testTooLong() {
+        CribFinder finder =
+            new CribFinder(alpha, CribFinder.indices(alpha, "AB"));
+        assertEquals(0, finder.find(CribFinder.indices(alpha, "CDE"),
+                                    new int[0], new int[0]));
+    }
+
+    @Test
+    public void testMatchesDirectCheck() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 50; trial += 1) {
+            int n = 1 + random.nextInt(300), size = 2 + random.nextInt(25);
+            int[] cipher = randomText(n, size, random);
+            int[] crib = randomText(1 + random.nextInt(Math.min(n, 140)),
+                                    size, random);
+            CribFinder finder = new CribFinder(alpha, cipher);
+            int[] offsets = new int[n], loops = new int[n];
+            int count = finder.find(crib, offsets, loops);
+            int k = 0;
+            for (int o = 0; o + crib.length <= n; o += 1) {
+                if (finder.admissible(crib, o)) {
+                    assertTrue(k < count);
+                    assertEquals(o, offsets[k]);
+                    assertEquals(finder.loops(crib, o), loops[k]);
+                    k += 1;
+                }
+            }
+            assertEquals(k, count);
+        }
+    }
+
+    @Test
+    public void testTrueOffsetAdmissible() {
+        Machine machine = TestUtils.navalMachine();
+        String plain = "HELLOWORLDATTACKATDAWN";
+        int[] cipher = new int[40];
+        Random random = new Random(5);
+        int offset = 11;
+        for (int k = 0; k < cipher.length; k += 1) {
+            int c = k >= offset && k < offset + plain.length()
+                ? alpha.toInt(plain.charAt(k - offset))
+                : random.nextInt(alpha.size());
+            cipher[k] = machine.convert(c);
+        }
+        CribFinder finder = new CribFinder(alpha, cipher);
+        int[] crib = CribFinder.indices(alpha, plain);
+        int[] offsets = new int[cipher.length], loops = new int[cipher.length];
+        int count = finder.find(crib, offsets, loops);
+        boolean found = false;
+        for (int k = 0; k < count; k += 1) {
+            found |= offsets[k] == offset;
+        }
+        assertTrue(found);
+    }
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Byte channels that convert the data passing through them with a
+ *  configured machine whose alphabet is single-byte (see
+ *  Alphabet.isSingleByte), working directly on the bytes of heap or
+ *  direct buffers without decoding them into characters.  As for
+ *  Machine.convert(String), blanks are dropped and other bytes that do
+ *  not encode a character of the alphabet cause an EnigmaException.
+ *  @author MS
+ */
+class EnigmaChannels {
+
+    /** Return a channel whose bytes are the conversion by MACHINE of the
+     *  bytes read from SOURCE.  Conversion is done in place in the
+     *  reader's buffer. */
+    static ReadableByteChannel readable(Machine machine,
+                                        ReadableByteChannel source) {
+        checkSingleByte(machine);
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                int start = dst.position();
+                while (true) {
+                    int n = source.read(dst);
+                    if (n <= 0) {
+                        return n;
+                    }
+                    ByteBuffer read = dst.duplicate();
+                    read.position(start).limit(start + n);
+                    dst.position(start);
+                    int k = machine.convert(read, dst);
+                    if (k > 0) {
+                        return k;
+                    }
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                return source.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                source.close();
+            }
+        };
+    }
+
+    /** Return a channel that writes to SINK, which must be in blocking
+     *  mode, the conversion by MACHINE of the bytes written to it. */
+    static WritableByteChannel writable(Machine machine,
+                                        WritableByteChannel sink) {
+        checkSingleByte(machine);
+        ByteBuffer staging = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int start = src.position();
+                while (src.hasRemaining()) {
+                    staging.clear();
+                    machine.convert(src, staging);
+                    staging.flip();
+                    while (staging.hasRemaining()) {
+                        sink.write(staging);
+                    }
+                }
+                return src.position() - start;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return sink.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        };
+    }
+
+    /** Check that MACHINE's alphabet is single-byte. */
+    private static void checkSingleByte(Machine machine) {
+        if (!machine.alphabet().isSingleByte()) {
+            throw error("byte channels need a single-byte alphabet");
+        }
+    }
+
+    /** Size of the staging buffer of writable channels. */
+    private static final int BUFFER_SIZE = 8192;
+}
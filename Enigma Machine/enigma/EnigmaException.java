@@ -10,6 +10,9 @@ class EnigmaException extends RuntimeException {
     /** An exception whose getMessage() value is MSG. */
     EnigmaException(String msg) {
         super(msg);
+        if (Metrics.enabled()) {
+            Metrics.get().recordError();
+        }
     }
 
     /** A utility method that returns a new exception with a message
@@ -0,0 +1,205 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.Flow;
+
+/** A reactive-streams stage that converts a stream of plaintext chunks
+ *  with a configured machine, carrying the rotor state from each chunk
+ *  to the next, so that the concatenation of the output chunks is the
+ *  conversion (as by Machine.convert(String)) of the concatenation of
+ *  the input chunks.
+ *
+ *  The stage holds no queue.  It requests from upstream exactly as many
+ *  chunks as its subscriber has demanded, plus one more for each input
+ *  chunk that converts to nothing (e.g., one of only blanks), and emits
+ *  each converted chunk as soon as it arrives.  A slow subscriber thus
+ *  slows the upstream rather than causing buffering, and the upstream
+ *  is never blocked by the stage.  Only one subscriber is supported,
+ *  since the rotor state cannot be shared.
+ *  @author MS
+ */
+class EnigmaProcessor
+    implements Flow.Processor<CharSequence, CharBuffer> {
+
+    /** A stage converting with MACHINE, which must already be set up. */
+    EnigmaProcessor(Machine machine) {
+        _machine = machine;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_downstream == null) {
+                _downstream = subscriber;
+                subscriber.onSubscribe(new Downstream());
+                if (_failure != null) {
+                    subscriber.onError(_failure);
+                } else if (_complete) {
+                    subscriber.onComplete();
+                }
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Downstream());
+        subscriber.onError(new IllegalStateException(
+            "EnigmaProcessor supports only one subscriber"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long pending;
+        synchronized (this) {
+            if (_upstream != null || _cancelled) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            pending = _pending;
+            _pending = 0;
+        }
+        if (pending > 0) {
+            subscription.request(pending);
+        }
+    }
+
+    @Override
+    public void onNext(CharSequence chunk) {
+        Flow.Subscriber<? super CharBuffer> downstream;
+        CharBuffer out;
+        synchronized (this) {
+            if (_cancelled || _complete) {
+                return;
+            }
+            downstream = _downstream;
+            int n = chunk.length();
+            if (_buffer.length < n) {
+                _buffer = new char[Math.max(n, 2 * _buffer.length)];
+            }
+            for (int i = 0; i < n; i += 1) {
+                _buffer[i] = chunk.charAt(i);
+            }
+            try {
+                n = _machine.convert(_buffer, 0, n, _buffer, 0);
+            } catch (EnigmaException excp) {
+                _cancelled = true;
+                _upstream.cancel();
+                fail(excp);
+                return;
+            }
+            if (n == 0) {
+                out = null;
+            } else {
+                char[] result = new char[n];
+                System.arraycopy(_buffer, 0, result, 0, n);
+                out = CharBuffer.wrap(result);
+            }
+        }
+        if (out == null) {
+            _upstream.request(1);
+        } else {
+            downstream.onNext(out);
+        }
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        fail(failure);
+    }
+
+    @Override
+    public void onComplete() {
+        Flow.Subscriber<? super CharBuffer> downstream;
+        synchronized (this) {
+            if (_complete) {
+                return;
+            }
+            _complete = true;
+            downstream = _downstream;
+        }
+        if (downstream != null) {
+            downstream.onComplete();
+        }
+    }
+
+    /** Terminate my subscriber (now or when it arrives) with FAILURE. */
+    private void fail(Throwable failure) {
+        Flow.Subscriber<? super CharBuffer> downstream;
+        synchronized (this) {
+            if (_complete) {
+                return;
+            }
+            _complete = true;
+            _failure = failure;
+            downstream = _downstream;
+        }
+        if (downstream != null) {
+            downstream.onError(failure);
+        }
+    }
+
+    /** The subscription given to my subscriber. */
+    private class Downstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            Flow.Subscription upstream;
+            synchronized (EnigmaProcessor.this) {
+                if (_cancelled || _complete) {
+                    return;
+                }
+                if (n <= 0) {
+                    _cancelled = true;
+                } else if (_upstream == null) {
+                    _pending = _pending + n < 0 ? Long.MAX_VALUE
+                        : _pending + n;
+                    return;
+                }
+                upstream = _upstream;
+            }
+            if (n <= 0) {
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+                fail(new IllegalArgumentException(
+                    "non-positive subscription request"));
+            } else {
+                upstream.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (EnigmaProcessor.this) {
+                _cancelled = true;
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Scratch space for converting one chunk. */
+    private char[] _buffer = new char[256];
+
+    /** My source, once subscribed. */
+    private Flow.Subscription _upstream;
+
+    /** My subscriber, once subscribed. */
+    private Flow.Subscriber<? super CharBuffer> _downstream;
+
+    /** Demand received before I had a source. */
+    private long _pending;
+
+    /** True once my subscriber has cancelled. */
+    private boolean _cancelled;
+
+    /** True once the stream has ended, normally or not. */
+    private boolean _complete;
+
+    /** The error that ended the stream, if any. */
+    private Throwable _failure;
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author MS
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A subscriber that collects what it receives, requesting one
+     *  chunk at a time. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            _subscription = s;
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer chunk) {
+            _received.append(chunk);
+            _chunks += 1;
+            _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            _failure = failure;
+            _done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _done.countDown();
+        }
+
+        /** Text received. */
+        private final StringBuilder _received = new StringBuilder();
+        /** Number of chunks received. */
+        private int _chunks;
+        /** Error received, if any. */
+        private Throwable _failure;
+        /** Counted down on completion. */
+        private final CountDownLatch _done = new CountDownLatch(1);
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testChunksCarryState() throws InterruptedException {
+        EnigmaProcessor stage = new EnigmaProcessor(navalMachine());
+        Collector out = new Collector();
+        stage.subscribe(out);
+        try (SubmissionPublisher<CharSequence> in =
+                 new SubmissionPublisher<>()) {
+            in.subscribe(stage);
+            for (String chunk : new String[] { "FROM HI", "S", "   ",
+                                               "SHOULDER HIAW", "ATHA" }) {
+                in.submit(chunk);
+            }
+        }
+        assertTrue(out._done.await(2, TimeUnit.SECONDS));
+        assertNull(out._failure);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", out._received.toString());
+        assertEquals(4, out._chunks);
+    }
+
+    @Test
+    public void testBadCharacter() throws InterruptedException {
+        EnigmaProcessor stage = new EnigmaProcessor(navalMachine());
+        Collector out = new Collector();
+        stage.subscribe(out);
+        try (SubmissionPublisher<CharSequence> in =
+                 new SubmissionPublisher<>()) {
+            in.subscribe(stage);
+            in.submit("FROM");
+            in.submit("H1S");
+        }
+        assertTrue(out._done.await(2, TimeUnit.SECONDS));
+        assertTrue(out._failure instanceof EnigmaException);
+        assertEquals("QVPQ", out._received.toString());
+    }
+}
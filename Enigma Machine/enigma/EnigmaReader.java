@@ -0,0 +1,81 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that delivers the conversion by a configured machine of the
+ *  characters read from another Reader.  Blanks are dropped and other
+ *  characters outside the machine's alphabet cause an EnigmaException,
+ *  as for Machine.convert(String).  Conversion is done in the caller's
+ *  buffer, with no intermediate copy.
+ *  @author MS
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A Reader converting the characters of IN with MACHINE, which must
+     *  already be set up. */
+    EnigmaReader(Machine machine, Reader in) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = in.read(cbuf, off, len);
+            if (n < 0) {
+                return -1;
+            }
+            n = _machine.convert(cbuf, off, n, cbuf, off);
+            if (n > 0) {
+                return n;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] one = new char[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0];
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        char[] discard = new char[(int) Math.min(n, SKIP_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(discard, 0,
+                         (int) Math.min(n - skipped, discard.length));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Largest buffer used by skip. */
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+}
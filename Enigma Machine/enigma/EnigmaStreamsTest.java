@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter and
+ *  EnigmaChannels.
+ *  @author MS
+ */
+public class EnigmaStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Plaintext used in these tests. */
+    private static final String PLAIN = "FROM HIS SHOULDER HIAWATHA";
+
+    /** Conversion of PLAIN by navalMachine(). */
+    private static final String CIPHER = "QVPQSOKOILPUBKJZPISFXDW";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReader() throws IOException {
+        EnigmaReader in = new EnigmaReader(navalMachine(),
+                                           new StringReader(PLAIN));
+        char[] buf = new char[7];
+        StringBuilder result = new StringBuilder();
+        for (int n = in.read(buf, 0, 7); n >= 0; n = in.read(buf, 0, 7)) {
+            result.append(buf, 0, n);
+        }
+        assertEquals(CIPHER, result.toString());
+    }
+
+    @Test
+    public void testWriter() throws IOException {
+        StringWriter result = new StringWriter();
+        EnigmaWriter out = new EnigmaWriter(navalMachine(), result);
+        out.write(PLAIN, 0, 4);
+        out.write(PLAIN.charAt(4));
+        out.write(PLAIN.substring(5).toCharArray());
+        out.flush();
+        assertEquals(CIPHER, result.toString());
+    }
+
+    @Test
+    public void testReadableChannel() throws IOException {
+        for (ByteBuffer buf : new ByteBuffer[] { ByteBuffer.allocate(5),
+                                                 ByteBuffer.allocateDirect(5)
+            }) {
+            ReadableByteChannel in = EnigmaChannels.readable(
+                navalMachine(),
+                Channels.newChannel(new ByteArrayInputStream(
+                    PLAIN.getBytes(StandardCharsets.US_ASCII))));
+            StringBuilder result = new StringBuilder();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    result.append((char) buf.get());
+                }
+                buf.clear();
+            }
+            assertEquals(CIPHER, result.toString());
+        }
+    }
+
+    @Test
+    public void testWritableChannel() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        WritableByteChannel out = EnigmaChannels.writable(
+            navalMachine(), Channels.newChannel(result));
+        ByteBuffer buf = ByteBuffer.allocateDirect(PLAIN.length());
+        buf.put(PLAIN.getBytes(StandardCharsets.US_ASCII)).flip();
+        assertEquals(PLAIN.length(), out.write(buf));
+        assertEquals(CIPHER, result.toString("US-ASCII"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadByte() throws IOException {
+        WritableByteChannel out = EnigmaChannels.writable(
+            navalMachine(), Channels.newChannel(new ByteArrayOutputStream()));
+        out.write(ByteBuffer.wrap("AB1".getBytes(StandardCharsets.US_ASCII)));
+    }
+}
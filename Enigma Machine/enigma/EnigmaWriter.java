@@ -0,0 +1,61 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that passes on to another Writer the conversion by a
+ *  configured machine of the characters written to it.  Blanks are
+ *  dropped and other characters outside the machine's alphabet cause an
+ *  EnigmaException, as for Machine.convert(String).
+ *  @author MS
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** A Writer converting characters with MACHINE, which must already
+     *  be set up, and writing the results to OUT. */
+    EnigmaWriter(Machine machine, Writer out) {
+        super(out);
+        _machine = machine;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _buffer.length);
+            int k = _machine.convert(cbuf, off, n, _buffer, 0);
+            out.write(_buffer, 0, k);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _buffer.length);
+            str.getChars(off, off + n, _buffer, 0);
+            int k = _machine.convert(_buffer, 0, n, _buffer, 0);
+            out.write(_buffer, 0, k);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _buffer[0] = (char) c;
+        int k = _machine.convert(_buffer, 0, 1, _buffer, 0);
+        out.write(_buffer, 0, k);
+    }
+
+    /** Size of the conversion buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Holds converted characters on their way to the underlying
+     *  Writer. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+}
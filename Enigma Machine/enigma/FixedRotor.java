@@ -13,5 +13,10 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        return new FixedRotor(name(), permutation());
+    }
+
 
 }
@@ -0,0 +1,317 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** Streams that decompress or compress gzip data on a thread of their
+ *  own, so that inflation and deflation overlap with conversion.  Data
+ *  passes between the caller and the background thread in a fixed set
+ *  of blocks that circulate through two bounded queues (one of filled
+ *  blocks, one of empty ones), so neither side can get more than a few
+ *  blocks ahead of the other and no memory is allocated per block.
+ *  @author MS
+ */
+class GzipStreams {
+
+    /** Return true iff NAME is that of a gzip file. */
+    static boolean isGzip(String name) {
+        return name.endsWith(".gz");
+    }
+
+    /** Return a stream of the decompressed contents of the gzip data in
+     *  RAW, which is read and inflated on another thread. */
+    static InputStream inflating(InputStream raw) {
+        return new InflatingStream(raw);
+    }
+
+    /** Return a stream whose contents are compressed as gzip data and
+     *  written to RAW on another thread.  The data are complete only when
+     *  the returned stream is closed. */
+    static OutputStream deflating(OutputStream raw) {
+        return new DeflatingStream(raw);
+    }
+
+    /** A block of data passed between threads. */
+    private static class Block {
+        /** The data, in DATA[0 .. LENGTH-1]. */
+        private final byte[] data = new byte[BLOCK_SIZE];
+
+        /** Number of bytes of DATA in use. */
+        private int length;
+    }
+
+    /** Marks the end of the data in a queue of filled blocks. */
+    private static final Block END = new Block();
+
+    /** The filled and empty blocks shared by a stream and its thread. */
+    private static class Blocks {
+
+        /** Fill the queue of empty blocks. */
+        Blocks() {
+            for (int k = 0; k < NUM_BLOCKS; k += 1) {
+                _empty.add(new Block());
+            }
+        }
+
+        /** Return the next block from QUEUE, waiting if necessary.  An
+         *  interrupt while waiting is reported as an IOException. */
+        Block take(BlockingQueue<Block> queue) throws IOException {
+            try {
+                return queue.take();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+        }
+
+        /** Add BLOCK to QUEUE, which always has room, since there are
+         *  only NUM_BLOCKS blocks. */
+        void put(BlockingQueue<Block> queue, Block block) {
+            queue.add(block);
+        }
+
+        /** Blocks holding data. */
+        protected final BlockingQueue<Block> _full =
+            new ArrayBlockingQueue<>(NUM_BLOCKS + 1);
+
+        /** Blocks free for reuse. */
+        protected final BlockingQueue<Block> _empty =
+            new ArrayBlockingQueue<>(NUM_BLOCKS + 1);
+
+        /** The error that stopped the background thread, if any. */
+        protected volatile IOException _failure;
+    }
+
+    /** A stream of data inflated by a background thread. */
+    private static class InflatingStream extends InputStream {
+
+        /** A stream of the inflated contents of RAW. */
+        InflatingStream(InputStream raw) {
+            _raw = raw;
+            _thread = new Thread(this::inflate, "enigma-inflater");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (_current == null || _pos == _current.length) {
+                if (_current == END) {
+                    if (_blocks._failure != null) {
+                        throw _blocks._failure;
+                    }
+                    return -1;
+                }
+                if (_current != null) {
+                    _blocks.put(_blocks._empty, _current);
+                }
+                _current = _blocks.take(_blocks._full);
+                _pos = 0;
+            }
+            int n = Math.min(len, _current.length - _pos);
+            System.arraycopy(_current.data, _pos, buf, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _thread.interrupt();
+            _raw.close();
+        }
+
+        /** Body of the background thread: inflate _raw into blocks. */
+        private void inflate() {
+            try (InputStream in = new GZIPInputStream(_raw, BLOCK_SIZE)) {
+                while (true) {
+                    Block block = _blocks.take(_blocks._empty);
+                    block.length = in.readNBytes(block.data, 0, BLOCK_SIZE);
+                    if (block.length == 0) {
+                        break;
+                    }
+                    _blocks.put(_blocks._full, block);
+                }
+            } catch (IOException excp) {
+                _blocks._failure = excp;
+            }
+            _blocks.put(_blocks._full, END);
+        }
+
+        /** The compressed data. */
+        private final InputStream _raw;
+
+        /** The blocks passed from the inflater. */
+        private final Blocks _blocks = new Blocks();
+
+        /** The inflating thread. */
+        private final Thread _thread;
+
+        /** The block being read, or null. */
+        private Block _current;
+
+        /** Index of the next byte to read in _current. */
+        private int _pos;
+    }
+
+    /** A stream of data deflated by a background thread. */
+    private static class DeflatingStream extends OutputStream {
+
+        /** A stream deflating its contents onto RAW. */
+        DeflatingStream(OutputStream raw) {
+            _raw = raw;
+            _thread = new Thread(this::deflate, "enigma-deflater");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            checkOpen();
+            while (len > 0) {
+                if (_current == null) {
+                    _current = _blocks.take(_blocks._empty);
+                }
+                int n = Math.min(len, BLOCK_SIZE - _current.length);
+                System.arraycopy(buf, off, _current.data, _current.length,
+                                 n);
+                _current.length += n;
+                off += n;
+                len -= n;
+                if (_current.length == BLOCK_SIZE) {
+                    handOff();
+                }
+            }
+        }
+
+        /** Pass any data written so far to the deflater.  This does not
+         *  force it to emit them, which would weaken the compression. */
+        @Override
+        public void flush() throws IOException {
+            checkOpen();
+            if (_current != null && _current.length > 0) {
+                handOff();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_closed) {
+                return;
+            }
+            flush();
+            _closed = true;
+            _blocks.put(_blocks._full, END);
+            try {
+                _thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+            if (_blocks._failure != null) {
+                throw _blocks._failure;
+            }
+        }
+
+        /** Pass _current to the deflater. */
+        private void handOff() throws IOException {
+            _blocks.put(_blocks._full, _current);
+            _current = null;
+        }
+
+        /** Report an error if I am closed or the deflater has failed. */
+        private void checkOpen() throws IOException {
+            if (_closed) {
+                throw new IOException("stream closed");
+            }
+            if (_blocks._failure != null) {
+                throw _blocks._failure;
+            }
+        }
+
+        /** Body of the background thread: deflate blocks onto _raw.
+         *  After a failure, blocks are still taken and recycled (but
+         *  discarded), so that the writer is never left waiting. */
+        private void deflate() {
+            OutputStream out = null;
+            try {
+                out = new GZIPOutputStream(_raw, BLOCK_SIZE);
+            } catch (IOException excp) {
+                _blocks._failure = excp;
+            }
+            while (true) {
+                Block block;
+                try {
+                    block = _blocks.take(_blocks._full);
+                } catch (IOException excp) {
+                    return;
+                }
+                if (block == END) {
+                    break;
+                }
+                if (_blocks._failure == null) {
+                    try {
+                        out.write(block.data, 0, block.length);
+                    } catch (IOException excp) {
+                        _blocks._failure = excp;
+                    }
+                }
+                block.length = 0;
+                _blocks.put(_blocks._empty, block);
+            }
+            try {
+                if (out != null) {
+                    out.close();
+                } else {
+                    _raw.close();
+                }
+            } catch (IOException excp) {
+                if (_blocks._failure == null) {
+                    _blocks._failure = excp;
+                }
+            }
+        }
+
+        /** Destination of the compressed data. */
+        private final OutputStream _raw;
+
+        /** The blocks passed to the deflater. */
+        private final Blocks _blocks = new Blocks();
+
+        /** The deflating thread. */
+        private final Thread _thread;
+
+        /** The block being filled, or null. */
+        private Block _current;
+
+        /** True once closed. */
+        private boolean _closed;
+    }
+
+    /** Size of each block. */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /** Number of blocks per stream. */
+    private static final int NUM_BLOCKS = 4;
+
+    /** Mask converting a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+}
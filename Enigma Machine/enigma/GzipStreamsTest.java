@@ -0,0 +1,124 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the GzipStreams class and Main's
+ *  handling of gzip files.
+ *  @author MS
+ */
+public class GzipStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return N bytes of compressible pseudo-random text. */
+    private byte[] text(int n) {
+        Random random = new Random(n);
+        byte[] result = new byte[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (byte) ('A' + random.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return DATA compressed with gzip. */
+    private byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the decompressed contents of gzip data DATA. */
+    private byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream in =
+                 new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Return a new temporary file with SUFFIX containing DATA. */
+    private File tempFile(String suffix, byte[] data) throws IOException {
+        File file = File.createTempFile("enigma", suffix);
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testInflating() throws IOException {
+        byte[] data = text(300000);
+        try (InputStream in = GzipStreams.inflating(
+                 new ByteArrayInputStream(gzip(data)))) {
+            byte[] start = new byte[1000];
+            assertEquals(1000, in.readNBytes(start, 0, 1000));
+            assertEquals(data[1000], (byte) in.read());
+            byte[] rest = in.readAllBytes();
+            assertArrayEquals(Arrays.copyOfRange(data, 1001, data.length),
+                              rest);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testDeflating() throws IOException {
+        byte[] data = text(300000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = GzipStreams.deflating(bytes);
+        out.write(data, 0, 7);
+        out.write(data[7]);
+        out.flush();
+        out.write(data, 8, data.length - 8);
+        out.close();
+        out.close();
+        assertArrayEquals(data, gunzip(bytes.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorrupt() throws IOException {
+        byte[] data = gzip(text(300000));
+        try (InputStream in = GzipStreams.inflating(
+                 new ByteArrayInputStream(Arrays.copyOf(data,
+                                                        data.length / 2)))) {
+            in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testMain() throws IOException {
+        String input = "* B Beta III IV I AXLE (HQ) (EX)\nHELLO WORLD\n";
+        File config = tempFile(".conf",
+                               NAVAL_CONFIG.getBytes(StandardCharsets.UTF_8));
+        File in = tempFile(".in.gz",
+                           gzip(input.getBytes(StandardCharsets.UTF_8)));
+        File out = tempFile(".out.gz", new byte[0]);
+        new Main(Arrays.asList(config.getPath(), in.getPath(),
+                               out.getPath())).process();
+        assertEquals("UIVGJ ZUKSG" + System.lineSeparator(),
+                     new String(gunzip(Files.readAllBytes(out.toPath())),
+                                StandardCharsets.UTF_8));
+    }
+}
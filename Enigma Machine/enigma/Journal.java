@@ -0,0 +1,162 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** An append-only journal of checkpoints in a long conversion, from which
+ *  an interrupted run can resume.  Each checkpoint records, at the end
+ *  of some input line within a message block, the input and output byte
+ *  offsets, the positions of the rotors (as alphabet characters,
+ *  leftmost first) and the block's settings line.  The journal is text:
+ *  a header line identifying the job, then one line per checkpoint:
+ *      INPUT-OFFSET OUTPUT-OFFSET POSITIONS SETTINGS-LINE
+ *  Each line is forced to disk before append returns, and a final line
+ *  left incomplete by a crash is ignored.
+ *  @author MS
+ */
+class Journal {
+
+    /** A checkpoint read from a journal. */
+    static class Entry {
+        /** A checkpoint at INPUT and OUTPUT bytes, with rotor POSITIONS
+         *  and settings line SETTINGS. */
+        Entry(long input, long output, String positions, String settings) {
+            this.input = input;
+            this.output = output;
+            this.positions = positions;
+            this.settings = settings;
+        }
+
+        /** Input offset just past the last line converted. */
+        final long input;
+
+        /** Output offset just past that line's output. */
+        final long output;
+
+        /** Rotor positions after that line. */
+        final String positions;
+
+        /** Settings line of the block containing that line. */
+        final String settings;
+    }
+
+    /** A journal kept in FILE for the job identified by JOB, a string
+     *  without line breaks. */
+    Journal(File file, String job) {
+        _file = file;
+        _header = HEADER + " " + job;
+    }
+
+    /** Return the last complete checkpoint in my file, or null if it
+     *  does not exist or holds none.  It is an error if it belongs to a
+     *  different job. */
+    Entry last() {
+        if (!_file.exists()) {
+            return null;
+        }
+        String text;
+        try {
+            text = new String(Files.readAllBytes(_file.toPath()),
+                              StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+        int end = text.lastIndexOf('\n');
+        if (end < 0) {
+            return null;
+        }
+        String[] lines = text.substring(0, end).split("\n");
+        if (!lines[0].equals(_header)) {
+            throw error("checkpoint journal %s is for a different job",
+                        _file);
+        }
+        if (lines.length == 1) {
+            return null;
+        }
+        String[] fields = lines[lines.length - 1].split(" ", 4);
+        try {
+            return new Entry(Long.parseLong(fields[0]),
+                             Long.parseLong(fields[1]), fields[2],
+                             fields[3]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw error("corrupt checkpoint journal %s", _file);
+        }
+    }
+
+    /** Start a new journal, discarding any old one. */
+    void start() {
+        try {
+            _channel = FileChannel.open(_file.toPath(),
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", _file);
+        }
+        write(_header);
+    }
+
+    /** Continue the existing journal. */
+    void resume() {
+        try {
+            _channel = FileChannel.open(_file.toPath(),
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("could not open %s", _file);
+        }
+    }
+
+    /** Record a checkpoint at INPUT and OUTPUT bytes with rotor
+     *  POSITIONS and settings line SETTINGS.  OUTPUT must already be
+     *  durable. */
+    void append(long input, long output, String positions,
+                String settings) {
+        write(input + " " + output + " " + positions + " " + settings);
+    }
+
+    /** Close and delete the journal after the job has completed. */
+    void finish() {
+        try {
+            if (_channel != null) {
+                _channel.close();
+            }
+            Files.deleteIfExists(_file.toPath());
+        } catch (IOException excp) {
+            throw error("could not remove %s", _file);
+        }
+    }
+
+    /** Append LINE and a newline to my file and force it to disk. */
+    private void write(String line) {
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(
+                (line + "\n").getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                _channel.write(bytes);
+            }
+            _channel.force(false);
+        } catch (IOException excp) {
+            throw error("could not write %s", _file);
+        }
+    }
+
+    /** First word of a journal's header line. */
+    private static final String HEADER = "enigma-journal 1";
+
+    /** The journal file. */
+    private final File _file;
+
+    /** The header line identifying my job. */
+    private final String _header;
+
+    /** Channel appending to _file, once started or resumed. */
+    private FileChannel _channel;
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Journal class and checkpointed
+ *  runs of Main.
+ *  @author MS
+ */
+public class JournalTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file containing TEXT. */
+    private File tempFile(String text) throws IOException {
+        File file = File.createTempFile("enigma", ".tmp");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Return a temporary configuration file with some naval rotors. */
+    private File config() throws IOException {
+        return tempFile(NAVAL_CONFIG);
+    }
+
+    /** Return an input of several blocks whose line number BAD (if
+     *  nonnegative) has a lower-case letter. */
+    private String input(int bad) {
+        StringBuilder result = new StringBuilder();
+        for (int b = 0; b < 6; b += 1) {
+            result.append(b % 2 == 0 ? "* B Beta III IV I AXLE (HQ) (EX)\n"
+                          : "* B Beta I IV III ZZZZ\n");
+            for (int k = 0; k < 10; k += 1) {
+                int line = 11 * b + k + 1;
+                result.append(line == bad ? "HELLO wORLD\n"
+                              : "HELLO WORLD\n");
+            }
+        }
+        return result.toString();
+    }
+
+    /** Run Main on CONFIG, INPUT and OUTPUT, returning the error it
+     *  reports, or null. */
+    private String run(File config, File input, File output) {
+        try {
+            new Main(Arrays.asList(config.getPath(), input.getPath(),
+                                   output.getPath())).process();
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLastEntry() throws IOException {
+        File file = tempFile("");
+        Journal journal = new Journal(file, "job 1");
+        assertNull(journal.last());
+        journal.start();
+        assertNull(journal.last());
+        journal.append(10, 12, "AXLE", "* B Beta III IV I AXLE");
+        journal.append(20, 24, "AXLF", "  * B Beta III IV I AXLE");
+        Files.write(file.toPath(), "30 36 AX".getBytes(),
+                    StandardOpenOption.APPEND);
+        Journal.Entry last = journal.last();
+        assertEquals(20, last.input);
+        assertEquals(24, last.output);
+        assertEquals("AXLF", last.positions);
+        assertEquals("  * B Beta III IV I AXLE", last.settings);
+        journal.finish();
+        assertFalse(file.exists());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWrongJob() throws IOException {
+        File file = tempFile("");
+        new Journal(file, "job 1").start();
+        new Journal(file, "job 2").last();
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        File config = config(), output = tempFile("");
+        File expected = tempFile("");
+        File journal = tempFile("");
+        journal.delete();
+        try {
+            Main.setCheckpoints(null, 0);
+            assertNull(run(config, tempFile(input(-1)), expected));
+
+            Main.setCheckpoints(journal, 100);
+            File input = tempFile(input(50));
+            assertNotNull(run(config, input, output));
+            assertTrue(journal.exists());
+            assertTrue(Files.readAllLines(journal.toPath()).size() > 1);
+
+            Files.write(input.toPath(), input(-1).getBytes());
+            assertNull(run(config, input, output));
+            assertFalse(journal.exists());
+            assertArrayEquals(Files.readAllBytes(expected.toPath()),
+                              Files.readAllBytes(output.toPath()));
+        } finally {
+            Main.setCheckpoints(null, 0);
+        }
+    }
+}
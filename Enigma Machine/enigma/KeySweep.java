@@ -0,0 +1,188 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Converts one message under many settings at once, as for generating
+ *  test vectors or sweeping keys.  Converting a character is passing it
+ *  through the plugboard, then the rotors (and reflector) in their
+ *  current positions, then the plugboard again.  Keys that share a
+ *  rotor order and start positions (and ring settings) share the whole
+ *  sequence of rotor positions, so they are converted together, one
+ *  message position at a time: the rotors are stepped once per
+ *  position for the lot, and each letter passed through them is
+ *  remembered for the rest of the keys at that position, so that each
+ *  key costs only its two plugboard lookups once the rotor mapping of
+ *  the letter it needs is known.  Groups of keys, split into chunks so
+ *  that every worker has a share, are converted on a fixed pool of
+ *  threads, each with its own copy of the machine.
+ *  @author MS
+ */
+class KeySweep {
+
+    /** A sweep using copies of MACHINE on WORKERS threads.  MACHINE
+     *  itself is not used to convert, and must not be changed while I am
+     *  in use. */
+    KeySweep(Machine machine, int workers) {
+        if (workers < 1) {
+            throw error("need at least one worker");
+        }
+        _prototype = machine;
+        _workers = workers;
+    }
+
+    /** Return the conversions of MESSAGE under each of the settings lines
+     *  in SETTINGS, in order, as for Machine.convert(String) on a machine
+     *  set up by that line. */
+    List<String> convert(String message, List<String> settings) {
+        Alphabet alphabet = _prototype.alphabet();
+        int[] text = message.codePoints().filter(c -> c != ' ')
+            .map(alphabet::toInt).toArray();
+        SettingsParser parser =
+            new SettingsParser(_prototype, _prototype.rotorSlots());
+        MachineSettings[] keys = new MachineSettings[settings.size()];
+        for (int k = 0; k < keys.length; k += 1) {
+            parser.parse(settings.get(k));
+            keys[k] = new MachineSettings(parser, alphabet);
+        }
+        List<String> result = new ArrayList<>();
+        for (int[] converted : convert(text, keys)) {
+            StringBuilder out = new StringBuilder(converted.length);
+            for (int c : converted) {
+                out.appendCodePoint(alphabet.toCodePoint(c));
+            }
+            result.add(out.toString());
+        }
+        return result;
+    }
+
+    /** Return the conversions of MESSAGE, a sequence of alphabet
+     *  indices, under each of KEYS, in order. */
+    int[][] convert(int[] message, MachineSettings[] keys) {
+        int size = _prototype.alphabet().size();
+        for (int c : message) {
+            if (c < 0 || c >= size) {
+                throw error("message character out of range");
+            }
+        }
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int k = 0; k < keys.length; k += 1) {
+            groups.computeIfAbsent(startState(keys[k]),
+                                   s -> new ArrayList<>()).add(k);
+        }
+        int chunk = Math.max(1, (keys.length + _workers - 1) / _workers);
+        int[][] result = new int[keys.length][];
+        ExecutorService pool = Executors.newFixedThreadPool(_workers);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (List<Integer> group : groups.values()) {
+                for (int from = 0; from < group.size(); from += chunk) {
+                    int[] members = group.subList(from, Math.min(
+                        from + chunk, group.size())).stream()
+                        .mapToInt(Integer::intValue).toArray();
+                    tasks.add(pool.submit(() -> convertGroup(message, keys,
+                                                             members,
+                                                             result)));
+                }
+            }
+            for (Future<?> task : tasks) {
+                await(task);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Return the number of times a letter has been passed through the
+     *  rotors of one of my machines, over all conversions so far. */
+    long rotorPasses() {
+        return _rotorPasses.get();
+    }
+
+    /** Convert MESSAGE under the keys KEYS[K] for each K in MEMBERS, all
+     *  with the same start state, storing the results in RESULT[K]. */
+    private void convertGroup(int[] message, MachineSettings[] keys,
+                              int[] members, int[][] result) {
+        Machine machine = _idle.poll();
+        if (machine == null) {
+            machine = _prototype.copy();
+        }
+        try {
+            machine.setUp(keys[members[0]]);
+            int size = machine.alphabet().size();
+            int[][] plugboards = new int[members.length][size];
+            int[][] outputs = new int[members.length][];
+            for (int j = 0; j < members.length; j += 1) {
+                keys[members[j]].plugboard().forwardInto(plugboards[j]);
+                outputs[j] = result[members[j]] = new int[message.length];
+            }
+            int[] rotors = new int[size], known = new int[size];
+            long passes = 0;
+            for (int i = 0; i < message.length; i += 1) {
+                machine.advance();
+                int c = message[i];
+                for (int j = 0; j < members.length; j += 1) {
+                    int[] plugboard = plugboards[j];
+                    int a = plugboard[c];
+                    if (known[a] != i + 1) {
+                        rotors[a] = machine.convertRotors(a);
+                        known[a] = i + 1;
+                        passes += 1;
+                    }
+                    outputs[j][i] = plugboard[rotors[a]];
+                }
+            }
+            _rotorPasses.addAndGet(passes);
+        } finally {
+            _idle.add(machine);
+        }
+    }
+
+    /** Return a string identifying the rotor order, start positions and
+     *  ring settings of SETTINGS. */
+    private static String startState(MachineSettings settings) {
+        return Arrays.toString(settings.rotors())
+            + Arrays.toString(settings.positions())
+            + Arrays.toString(settings.rings());
+    }
+
+    /** Wait for TASK to finish, passing on any error it reported. */
+    private static void await(Future<?> task) {
+        try {
+            task.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("key sweep failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Machine whose configuration is copied for each worker. */
+    private final Machine _prototype;
+
+    /** Number of worker threads. */
+    private final int _workers;
+
+    /** Machines not in use by any worker. */
+    private final Queue<Machine> _idle = new ConcurrentLinkedQueue<>();
+
+    /** Total rotor passes (see rotorPasses). */
+    private final AtomicLong _rotorPasses = new AtomicLong();
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySweep class.
+ *  @author MS
+ */
+public class KeySweepTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the conversion of MESSAGE by a machine for CONFIG set up by
+     *  SETTINGS, converted on its own. */
+    private static String direct(String settings, String message) {
+        Machine m = Main.configure(new Scanner(CONFIG));
+        m.setUp(new SettingsCache(m, m.rotorSlots(), 1).get(settings));
+        return m.convert(message);
+    }
+
+    /** Return a random settings line from RANDOM, choosing among the
+     *  first ORDERS rotor orders and POSITIONS start positions. */
+    private static String settingsLine(Random random, int orders,
+                                       int positions) {
+        String[] fast = { "I", "II", "III", "IV", "V" };
+        int order = random.nextInt(orders);
+        StringBuilder result = new StringBuilder("* B Beta");
+        for (int k = 0; k < 3; k += 1) {
+            result.append(' ').append(fast[(order + 2 * k) % fast.length]);
+        }
+        Random start = new Random(random.nextInt(positions));
+        result.append(' ');
+        for (int k = 0; k < 4; k += 1) {
+            result.append((char) ('A' + start.nextInt(26)));
+        }
+        List<Character> letters = new ArrayList<>();
+        for (char c = 'A'; c <= 'Z'; c += 1) {
+            letters.add(c);
+        }
+        Collections.shuffle(letters, random);
+        int plugs = random.nextInt(11);
+        for (int k = 0; k < plugs; k += 1) {
+            result.append(" (").append(letters.get(2 * k))
+                .append(letters.get(2 * k + 1)).append(')');
+        }
+        return result.toString();
+    }
+
+    /** A configuration with some naval rotors. */
+    private static final String CONFIG =
+        navalConfig("I", "II", "III", "IV", "V", "Beta", "B");
+
+    /** A message long enough to turn the middle rotors. */
+    private static final String MESSAGE =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD MADE OF "
+        + "SLIDING FOLDING ROSEWOOD NEATLY PUT IT ALL TOGETHER IN ITS CASE "
+        + "IT LAY COMPACTLY FOLDED INTO NEARLY NOTHING";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(11);
+        List<String> settings = new ArrayList<>();
+        for (int k = 0; k < 60; k += 1) {
+            settings.add(settingsLine(random, 3, 4));
+        }
+        for (int workers : new int[] { 1, 3 }) {
+            KeySweep sweep = new KeySweep(
+                Main.configure(new Scanner(CONFIG)), workers);
+            List<String> results = sweep.convert(MESSAGE, settings);
+            assertEquals(settings.size(), results.size());
+            for (int k = 0; k < settings.size(); k += 1) {
+                assertEquals(settings.get(k),
+                             direct(settings.get(k), MESSAGE),
+                             results.get(k));
+            }
+        }
+    }
+
+    @Test
+    public void testSharesRotorPasses() {
+        Random random = new Random(5);
+        List<String> settings = new ArrayList<>();
+        for (int k = 0; k < 200; k += 1) {
+            settings.add(settingsLine(random, 1, 1));
+        }
+        KeySweep sweep =
+            new KeySweep(Main.configure(new Scanner(CONFIG)), 1);
+        sweep.convert(MESSAGE, settings);
+        int letters = MESSAGE.replace(" ", "").length();
+        assertTrue(sweep.rotorPasses() <= (long) letters * 26);
+        assertTrue(sweep.rotorPasses() < (long) letters * settings.size());
+    }
+
+    @Test
+    public void testNoKeys() {
+        KeySweep sweep =
+            new KeySweep(Main.configure(new Scanner(CONFIG)), 2);
+        assertTrue(sweep.convert(MESSAGE, new ArrayList<>()).isEmpty());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSettings() {
+        KeySweep sweep =
+            new KeySweep(Main.configure(new Scanner(CONFIG)), 2);
+        List<String> settings = new ArrayList<>();
+        settings.add("* B Beta I II VI AAAA");
+        sweep.convert(MESSAGE, settings);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadMessage() {
+        KeySweep sweep =
+            new KeySweep(Main.configure(new Scanner(CONFIG)), 2);
+        List<String> settings = new ArrayList<>();
+        settings.add("* B Beta I II III AAAA");
+        sweep.convert("HELLO, WORLD", settings);
+    }
+}
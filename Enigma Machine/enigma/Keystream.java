@@ -0,0 +1,142 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The mappings of the rotors of a machine (without the plugboard) at
+ *  each step after it is set to a particular start state: a rotor order,
+ *  rotor positions and ring settings.  The mapping of a letter at a step
+ *  is recorded the first time it is computed, so that later messages
+ *  from the same start state find it by lookup.  Mappings are held as
+ *  one more than their values in a byte or short array, according to
+ *  the size of the alphabet, with 0 meaning not yet known, for at most
+ *  a fixed number of steps.  Instances are reused for other start
+ *  states (see reset), so that a bounded set of them serves a machine
+ *  without further allocation.
+ *  @author MS
+ */
+final class Keystream {
+
+    /** An empty keystream for the first STEPS steps of a machine with
+     *  NUMROTORS rotor slots and an alphabet of SIZE characters, which
+     *  must be at most MAX_SIZE. */
+    Keystream(int numRotors, int size, int steps) {
+        if (size > MAX_SIZE) {
+            throw error("alphabet too large for a keystream");
+        }
+        _size = size;
+        _steps = steps;
+        if (size < BYTE_LIMIT) {
+            _bytes = new byte[size * steps];
+            _shorts = null;
+        } else {
+            _bytes = null;
+            _shorts = new short[size * steps];
+        }
+        _rotors = new int[numRotors];
+        _positions = new int[numRotors - 1];
+        _rings = new int[numRotors - 1];
+    }
+
+    /** Return the number of bytes of mappings a keystream for STEPS steps
+     *  over an alphabet of SIZE characters holds. */
+    static long bytes(int size, int steps) {
+        return (long) size * steps * (size < BYTE_LIMIT ? 1 : 2);
+    }
+
+    /** Return a hash of the start state of SETTINGS. */
+    static int hash(MachineSettings settings) {
+        return (Arrays.hashCode(settings.rotors()) * 31
+                + Arrays.hashCode(settings.positions())) * 31
+            + Arrays.hashCode(settings.rings());
+    }
+
+    /** Return true iff I hold the keystream of the start state of
+     *  SETTINGS. */
+    boolean matches(MachineSettings settings) {
+        int[] rings = settings.rings();
+        return _used && Arrays.equals(_rotors, settings.rotors())
+            && Arrays.equals(_positions, settings.positions())
+            && (rings == null ? !_hasRings
+                : _hasRings && Arrays.equals(_rings, rings));
+    }
+
+    /** Forget my mappings and hold the keystream of the start state of
+     *  SETTINGS instead. */
+    void reset(MachineSettings settings) {
+        System.arraycopy(settings.rotors(), 0, _rotors, 0, _rotors.length);
+        System.arraycopy(settings.positions(), 0, _positions, 0,
+                         _positions.length);
+        _hasRings = settings.rings() != null;
+        if (_hasRings) {
+            System.arraycopy(settings.rings(), 0, _rings, 0, _rings.length);
+        }
+        if (_bytes != null) {
+            Arrays.fill(_bytes, 0, _known, (byte) 0);
+        } else {
+            Arrays.fill(_shorts, 0, _known, (short) 0);
+        }
+        _known = 0;
+        _used = true;
+    }
+
+    /** Return the number of steps I hold. */
+    int steps() {
+        return _steps;
+    }
+
+    /** Return the mapping of C at step STEP, where 0 <= STEP < steps(),
+     *  or -1 if it is not known. */
+    int get(int step, int c) {
+        int k = step * _size + c;
+        return _bytes != null ? (_bytes[k] & BYTE_MASK) - 1 : _shorts[k] - 1;
+    }
+
+    /** Record that C maps to MAPPING at step STEP, where
+     *  0 <= STEP < steps(). */
+    void put(int step, int c, int mapping) {
+        int k = step * _size + c;
+        if (_bytes != null) {
+            _bytes[k] = (byte) (mapping + 1);
+        } else {
+            _shorts[k] = (short) (mapping + 1);
+        }
+        _known = Math.max(_known, k + 1);
+    }
+
+    /** Alphabets smaller than this are held in bytes. */
+    private static final int BYTE_LIMIT = 255;
+
+    /** Largest alphabet held (in shorts). */
+    static final int MAX_SIZE = Short.MAX_VALUE - 1;
+
+    /** Mask of the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of steps held. */
+    private final int _steps;
+
+    /** Mappings plus one, by step and then letter, for alphabets held in
+     *  bytes, or null. */
+    private final byte[] _bytes;
+
+    /** Mappings plus one, as for _bytes, for larger alphabets, or
+     *  null. */
+    private final short[] _shorts;
+
+    /** One more than the index of the last mapping recorded. */
+    private int _known;
+
+    /** True once I hold the keystream of some start state. */
+    private boolean _used;
+
+    /** My start state. */
+    private final int[] _rotors, _positions, _rings;
+
+    /** True iff my start state has ring settings. */
+    private boolean _hasRings;
+}
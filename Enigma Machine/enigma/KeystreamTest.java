@@ -0,0 +1,127 @@
+package enigma;
+
+import java.util.Random;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Keystream class and its use by
+ *  Machine.
+ *  @author MS
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Convert BLOCKS blocks of random messages, each starting from one of
+     *  KEYS random settings lines, on two machines for the Bench workload
+     *  SPEC, one of which remembers MAXBYTES bytes of keystreams, and
+     *  check that they agree.  If RESET, also move the rotors partway
+     *  through each block, as when resuming from a checkpoint. */
+    private void compare(String spec, int keys, int blocks, long maxBytes,
+                         boolean reset) {
+        Bench bench = new Bench(spec);
+        Machine plain = Main.configure(new Scanner(bench.config()));
+        Machine cached = Main.configure(new Scanner(bench.config()));
+        cached.cacheKeystreams(maxBytes);
+        cached = cached.copy();
+        SettingsCache plainCache =
+            new SettingsCache(plain, plain.rotorSlots(), keys);
+        SettingsCache cachedCache =
+            new SettingsCache(cached, cached.rotorSlots(), keys);
+        String[] lines = settingsLines(plain, keys);
+        Random random = new Random(9);
+        int size = plain.alphabet().size();
+        for (int b = 0; b < blocks; b += 1) {
+            String line = lines[random.nextInt(keys)];
+            plain.setUp(plainCache.get(line));
+            cached.setUp(cachedCache.get(line));
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; i += 1) {
+                if (reset && i == length / 2) {
+                    int[] positions = plain.positions();
+                    positions[0] = (positions[0] + 1) % size;
+                    plain.setRotors(positions);
+                    cached.setRotors(positions);
+                }
+                int c = random.nextInt(size);
+                assertEquals(plain.convert(c), cached.convert(c));
+            }
+            assertArrayEquals(plain.positions(), cached.positions());
+        }
+    }
+
+    /** Return KEYS settings lines for MACHINE, configured by Bench, which
+     *  share their rotor order but differ in start positions and
+     *  plugboards. */
+    private String[] settingsLines(Machine machine, int keys) {
+        Alphabet alpha = machine.alphabet();
+        Random random = new Random(keys);
+        String[] result = new String[keys];
+        for (int k = 0; k < keys; k += 1) {
+            StringBuilder line = new StringBuilder("* R0");
+            for (int r = 1; r < machine.rotorSlots(); r += 1) {
+                line.append(" R").append(r);
+            }
+            line.append(' ');
+            Random start = new Random(k / 2);
+            for (int r = 1; r < machine.rotorSlots(); r += 1) {
+                line.appendCodePoint(alpha.toCodePoint(
+                    start.nextInt(alpha.size())));
+            }
+            int a = random.nextInt(alpha.size()),
+                b = (a + 1 + random.nextInt(alpha.size() - 1))
+                % alpha.size();
+            line.append(" (").appendCodePoint(alpha.toCodePoint(a))
+                .appendCodePoint(alpha.toCodePoint(b)).append(')');
+            result[k] = line.toString();
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSmallAlphabet() {
+        compare("alphabet=26,slots=5,pawls=3,library=5", 8, 200, 1 << 20,
+                false);
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        compare("alphabet=300,slots=4,pawls=2,library=4", 4, 50, 1 << 22,
+                false);
+    }
+
+    @Test
+    public void testSmallBudget() {
+        compare("alphabet=26,slots=5,pawls=3,library=5", 16, 200, 26 * 50,
+                false);
+    }
+
+    @Test
+    public void testRepositioned() {
+        compare("alphabet=26,slots=5,pawls=3,library=5", 8, 100, 1 << 20,
+                true);
+    }
+
+    @Test
+    public void testRecordsMappings() {
+        Keystream keystream = new Keystream(3, 26, 4);
+        assertEquals(4, keystream.steps());
+        assertEquals(-1, keystream.get(3, 25));
+        keystream.put(3, 25, 0);
+        keystream.put(0, 0, 25);
+        assertEquals(0, keystream.get(3, 25));
+        assertEquals(25, keystream.get(0, 0));
+        assertEquals(-1, keystream.get(0, 1));
+        assertEquals(26 * 4, Keystream.bytes(26, 4));
+        assertEquals(2 * 300 * 4, Keystream.bytes(300, 4));
+    }
+}
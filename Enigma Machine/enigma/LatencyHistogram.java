@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A thread-safe histogram of durations in nanoseconds with logarithmic
+ *  buckets, each power of two being split into SUB_BUCKETS linear
+ *  sub-buckets.  Recorded values are thus kept to within 1/SUB_BUCKETS
+ *  of their true value, in a fixed amount of space, in the manner of an
+ *  HDR histogram.
+ *  @author MS
+ */
+class LatencyHistogram {
+
+    /** Record one duration of NANOS nanoseconds.  Negative durations
+     *  are recorded as 0. */
+    void record(long nanos) {
+        long v = Math.max(0, nanos);
+        _buckets.incrementAndGet(bucket(v));
+        _count.increment();
+        _sum.add(v);
+        long max = _max.get();
+        while (v > max && !_max.compareAndSet(max, v)) {
+            max = _max.get();
+        }
+    }
+
+    /** Return the number of recorded durations. */
+    long count() {
+        return _count.sum();
+    }
+
+    /** Return the mean recorded duration in nanoseconds, or 0 if none
+     *  has been recorded. */
+    double mean() {
+        long n = count();
+        return n == 0 ? 0.0 : (double) _sum.sum() / n;
+    }
+
+    /** Return the longest recorded duration in nanoseconds. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return the smallest duration in nanoseconds at or below which
+     *  the fraction Q of recorded durations lie (0 <= Q <= 1), to within
+     *  the precision of my buckets. */
+    long percentile(double q) {
+        long n = 0;
+        for (int i = 0; i < NUM_BUCKETS; i += 1) {
+            n += _buckets.get(i);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i += 1) {
+            seen += _buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    /** Discard all recorded durations. */
+    void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i += 1) {
+            _buckets.set(i, 0);
+        }
+        _count.reset();
+        _sum.reset();
+        _max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus "
+                             + "max=%.1fus", count(), mean() / 1e3,
+                             percentile(0.5) / 1e3, percentile(0.99) / 1e3,
+                             max() / 1e3);
+    }
+
+    /** Return the index of the bucket holding V >= 0. */
+    static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int m = 63 - Long.numberOfLeadingZeros(v);
+        int shift = m - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS
+            + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    /** Return the largest value held by bucket I. */
+    static long highest(int i) {
+        if (i < SUB_BUCKETS) {
+            return i;
+        }
+        int shift = i / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + i % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /** Log2 of the number of sub-buckets per power of two. */
+    private static final int SUB_BITS = 4;
+
+    /** Number of sub-buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Number of buckets needed for all non-negative longs. */
+    private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /** Counts of durations per bucket. */
+    private final AtomicLongArray _buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    /** Number and total of recorded durations. */
+    private final LongAdder _count = new LongAdder(), _sum = new LongAdder();
+
+    /** Longest recorded duration. */
+    private final AtomicLong _max = new AtomicLong();
+}
@@ -0,0 +1,47 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LatencyHistogram class.
+ *  @author MS
+ */
+public class LatencyHistogramTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 100000; v += 1) {
+            int b = LatencyHistogram.bucket(v);
+            assertTrue(LatencyHistogram.highest(b) >= v);
+            assertTrue(b == 0 || LatencyHistogram.highest(b - 1) < v);
+        }
+        int b = LatencyHistogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(b));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(0.5));
+        for (long v = 1; v <= 1000; v += 1) {
+            h.record(v * 1000);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1000000, h.max());
+        assertEquals(500500.0, h.mean(), 1e-6);
+        assertEquals(500000, h.percentile(0.5), 500000 / 16);
+        assertEquals(990000, h.percentile(0.99), 990000 / 16);
+        assertEquals(1000000, h.percentile(1.0));
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.max());
+    }
+}
@@ -0,0 +1,129 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** A reader of the lines of a byte stream that works in a single reusable
+ *  buffer, so that reading a line allocates nothing unless it is longer
+ *  than any before it.  Lines end with "\n", "\r\n" or a lone "\r", as
+ *  for Scanner.nextLine; the terminator is not part of the line.  A final
+ *  line need not be terminated.
+ *  @author MS
+ */
+class LineReader {
+
+    /** A reader of the lines of IN. */
+    LineReader(InputStream in) {
+        _in = in;
+    }
+
+    /** Advance to the next line, returning false if there is none.  The
+     *  contents of the previous line are then no longer available. */
+    boolean next() {
+        _consumed += _pos - _start;
+        _start = _pos;
+        while (true) {
+            int i = _pos;
+            while (i < _limit && _buf[i] != '\n' && _buf[i] != '\r') {
+                i += 1;
+            }
+            if (i < _limit && (_buf[i] == '\n' || i + 1 < _limit)) {
+                _end = i;
+                _pos = _buf[i] == '\r' && _buf[i + 1] == '\n' ? i + 2 : i + 1;
+                return true;
+            }
+            _pos = i;
+            if (!fill()) {
+                if (_start == _limit) {
+                    return false;
+                }
+                _end = _pos;
+                _pos = _limit;
+                return true;
+            }
+        }
+    }
+
+    /** Return the buffer holding the current line.  Its contents may be
+     *  modified by the caller. */
+    byte[] buffer() {
+        return _buf;
+    }
+
+    /** Return the index in buffer() of the first byte of the current
+     *  line. */
+    int start() {
+        return _start;
+    }
+
+    /** Return the number of bytes in the current line. */
+    int length() {
+        return _end - _start;
+    }
+
+    /** Return the current line decoded as UTF-8. */
+    String text() {
+        return new String(_buf, _start, _end - _start,
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Return the offset in the stream of the first byte of the current
+     *  line. */
+    long offset() {
+        return _consumed;
+    }
+
+    /** Return the offset in the stream just past the current line and
+     *  its terminator. */
+    long endOffset() {
+        return _consumed + _pos - _start;
+    }
+
+    /** Read more input after the current line's partial contents,
+     *  moving them to the front of the buffer (enlarged if they fill
+     *  it).  Return false at end of input. */
+    private boolean fill() {
+        int n = _limit - _start;
+        if (_start > 0) {
+            System.arraycopy(_buf, _start, _buf, 0, n);
+        } else if (n == _buf.length) {
+            byte[] larger = new byte[2 * _buf.length];
+            System.arraycopy(_buf, 0, larger, 0, n);
+            _buf = larger;
+        }
+        _pos -= _start;
+        _start = 0;
+        _limit = n;
+        try {
+            int k = _in.read(_buf, _limit, _buf.length - _limit);
+            if (k < 0) {
+                return false;
+            }
+            _limit += k;
+            return true;
+        } catch (IOException excp) {
+            throw error("error reading input: %s", excp.getMessage());
+        }
+    }
+
+    /** Initial buffer size. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of bytes. */
+    private final InputStream _in;
+
+    /** Holds the current line and bytes read after it. */
+    private byte[] _buf = new byte[BUFFER_SIZE];
+
+    /** The current line is _buf[_start .. _end-1]; the next starts at
+     *  _pos; valid data ends at _limit.  While a line is being read, _pos
+     *  is where the search for its end resumes, which is at a final
+     *  "\r" until the byte after it is known. */
+    private int _start, _end, _pos, _limit;
+
+    /** Stream offset of _buf[_start]. */
+    private long _consumed;
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author MS
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a reader of the bytes of TEXT. */
+    private LineReader reader(String text) {
+        return new LineReader(new ByteArrayInputStream(text.getBytes()));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLines() {
+        LineReader lines = reader("* B\r\n\nHELLO\nWORLD");
+        assertTrue(lines.next());
+        assertEquals("* B", lines.text());
+        assertEquals(0, lines.offset());
+        assertEquals(5, lines.endOffset());
+        assertTrue(lines.next());
+        assertEquals(0, lines.length());
+        assertTrue(lines.next());
+        assertEquals("HELLO", lines.text());
+        assertEquals(6, lines.offset());
+        assertTrue(lines.next());
+        assertEquals("WORLD", lines.text());
+        assertEquals(17, lines.endOffset());
+        assertFalse(lines.next());
+    }
+
+    @Test
+    public void testCarriageReturns() {
+        LineReader lines = reader("* B\rHELLO\r\rWORLD\r\nX\r");
+        String[] expected = { "* B", "HELLO", "", "WORLD", "X" };
+        long[] ends = { 4, 10, 11, 18, 20 };
+        for (int i = 0; i < expected.length; i += 1) {
+            assertTrue(lines.next());
+            assertEquals(expected[i], lines.text());
+            assertEquals(ends[i], lines.endOffset());
+        }
+        assertFalse(lines.next());
+    }
+
+    @Test
+    public void testCarriageReturnAtBufferEnd() {
+        StringBuilder text = new StringBuilder();
+        for (int k = 1; k < (1 << 16); k += 1) {
+            text.append('A');
+        }
+        LineReader lines = reader(text + "\r\nB\rC");
+        assertTrue(lines.next());
+        assertEquals((1 << 16) - 1, lines.length());
+        assertEquals((1 << 16) + 1, lines.endOffset());
+        assertTrue(lines.next());
+        assertEquals("B", lines.text());
+        assertTrue(lines.next());
+        assertEquals("C", lines.text());
+        assertFalse(lines.next());
+    }
+
+    @Test
+    public void testLongLines() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3; i += 1) {
+            for (int k = 0; k < 100000; k += 1) {
+                text.append((char) ('A' + i));
+            }
+            text.append('\n');
+        }
+        LineReader lines = reader(text.toString());
+        for (int i = 0; i < 3; i += 1) {
+            assertTrue(lines.next());
+            assertEquals(100000, lines.length());
+            assertEquals('A' + i, lines.buffer()[lines.start() + 99999]);
+            assertEquals(100001L * i, lines.offset());
+        }
+        assertFalse(lines.next());
+    }
+}
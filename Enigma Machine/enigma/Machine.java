@@ -1,5 +1,6 @@
 package enigma;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -8,7 +9,13 @@ import java.util.Set;
 
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The Rotor objects
+ *  describe my configuration; when rotors are inserted, their positions,
+ *  permutations and notches are copied into flat arrays indexed by slot,
+ *  and the rotors are advanced and characters converted using those
+ *  alone, with no calls on the rotors, whatever their classes.  The
+ *  positions of the Rotor objects are brought up to date only when they
+ *  are handed out (see getRotor) or replaced.
  *  @author PNH, MS
  */
 class Machine {
@@ -22,8 +29,37 @@ class Machine {
             throw error("wrong number of rotors");
         }
         _alphabet = alpha;
+        _numRotorSlots = numRotors;
         _allRotors = allRotors;
+        _available = allRotors.toArray(new Rotor[allRotors.size()]);
         _pawls = pawls;
+        _settingsPlugboard = new Permutation("", alpha);
+        _size = alpha.size();
+        _forwardTables = new int[_available.length][];
+        _backwardTables = new int[_available.length][];
+        _notchTables = new boolean[_available.length][];
+    }
+
+    /** Return a new machine with my alphabet, rotor slots and pawls, whose
+     *  available rotors are fresh copies of mine.  The copy shares no
+     *  mutable state with me, so the two may be used by different
+     *  threads. */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _available) {
+            rotors.add(r.copy());
+        }
+        Machine result =
+            new Machine(_alphabet, _numRotorSlots, _pawls, rotors);
+        if (_keystreams != null) {
+            result.cacheKeystreams(_keystreamBytes);
+        }
+        return result;
+    }
+
+    /** Return the number of rotors my settings lines must name. */
+    int rotorSlots() {
+        return _numRotorSlots;
     }
 
     /** Return the number of rotor slots I have. */
@@ -32,7 +68,11 @@ class Machine {
     }
 
     void resetRotors() {
+        syncRotors();
         _rotors = new ArrayList<>();
+        flatten();
+        _settings = null;
+        _keystream = null;
     }
 
     /** Return the number pawls (and thus rotating rotors) I have. */
@@ -48,20 +88,37 @@ class Machine {
         if (k > numRotors() - 1) {
             throw error("invalid index for rotors");
         }
-        return _rotors.get(k);
+        Rotor result = _rotors.get(k);
+        if (k > 0) {
+            result.set(_posns[k]);
+        }
+        return result;
     }
 
     Alphabet alphabet() {
         return _alphabet;
     }
 
+    /** Return the number of rotors available for insertion. */
+    int numAvailableRotors() {
+        return _available.length;
+    }
+
+    /** Return available rotor #K, in the order given to my constructor. */
+    Rotor availableRotor(int k) {
+        return _available[k];
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        _settings = null;
+        _keystream = null;
         if (!rotorsUnique(rotors)) {
             throw error("rotors cannot be repeated.");
         }
+        syncRotors();
         for (int i = 0; i < rotors.length; i++) {
             for (Rotor r : _allRotors) {
                 String a = r.name();
@@ -79,6 +136,101 @@ class Machine {
             throw error("at least one rotor is misnamed,"
                     + " or you have not provided enough rotors.");
         }
+        flatten();
+    }
+
+    /** Set my rotor slots to the available rotors whose indices (as for
+     *  availableRotor) are given by ROTORS, where ROTORS[0] is the
+     *  reflector.  Initially, all rotors are set at their 0 setting. */
+    void insertRotors(int[] rotors) {
+        for (int i = 0; i < rotors.length; i += 1) {
+            for (int j = 0; j < i; j += 1) {
+                if (rotors[i] == rotors[j]) {
+                    throw error("rotors cannot be repeated.");
+                }
+            }
+        }
+        _settings = null;
+        _keystream = null;
+        syncRotors();
+        _rotors.clear();
+        for (int k : rotors) {
+            _rotors.add(_available[k]);
+        }
+        if (!(_rotors.get(0) instanceof Reflector)) {
+            throw error("first rotor must be a reflector");
+        }
+        flatten();
+    }
+
+    /** Copy the positions, rotor tables and notches of my inserted
+     *  rotors into the arrays used to advance them and convert
+     *  characters.  The tables of each available rotor are built the
+     *  first time it is inserted, and the arrays are reused while the
+     *  number of rotors stays the same, so that changing rotors does not
+     *  allocate.  Rotors whose tables are shared are the exception: so
+     *  that the heap holds the tables of no more rotors than I have
+     *  slots, theirs are copied into buffers kept for each slot,
+     *  whenever a different rotor is inserted there. */
+    private void flatten() {
+        int n = _rotors.size();
+        if (_posns.length != n) {
+            _posns = new int[n];
+            _forward = new int[n][];
+            _backward = new int[n][];
+            _rotates = new boolean[n];
+            _notches = new boolean[n][];
+            _slotRotors = new Rotor[n];
+            _slotForward = new int[n][];
+            _slotBackward = new int[n][];
+        }
+        for (int i = 0; i < n; i += 1) {
+            Rotor rotor = _rotors.get(i);
+            Permutation perm = rotor.permutation();
+            int k = 0;
+            while (_available[k] != rotor) {
+                k += 1;
+            }
+            if (_notchTables[k] == null) {
+                _notchTables[k] = new boolean[_size];
+                for (int p = 0; p < _size; p += 1) {
+                    _notchTables[k][p] = rotor.notchAt(p);
+                }
+            }
+            if (!perm.shared()) {
+                if (_forwardTables[k] == null) {
+                    _forwardTables[k] = new int[_size];
+                    _backwardTables[k] = new int[_size];
+                    perm.forwardInto(_forwardTables[k]);
+                    perm.inverseInto(_backwardTables[k]);
+                }
+                _forward[i] = _forwardTables[k];
+                _backward[i] = _backwardTables[k];
+            } else {
+                if (_slotRotors[i] != rotor) {
+                    if (_slotForward[i] == null) {
+                        _slotForward[i] = new int[_size];
+                        _slotBackward[i] = new int[_size];
+                    }
+                    perm.forwardInto(_slotForward[i]);
+                    perm.inverseInto(_slotBackward[i]);
+                    _slotRotors[i] = rotor;
+                }
+                _forward[i] = _slotForward[i];
+                _backward[i] = _slotBackward[i];
+            }
+            _posns[i] = rotor.setting();
+            _rotates[i] = rotor.rotates();
+            _notches[i] = _notchTables[k];
+        }
+    }
+
+    /** Set the positions of my inserted Rotor objects to those I have
+     *  reached. */
+    private void syncRotors() {
+        for (int i = 1; i < _rotors.size(); i += 1) {
+            _rotors.get(i).set(_posns[i]);
+        }
     }
 
     boolean rotorsUnique(String[] rotors) {
@@ -90,23 +242,119 @@ class Machine {
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        assert (setting.length() == (_rotors.size() - 1));
+        int[] chars = setting.codePoints().toArray();
+        assert (chars.length == (_rotors.size() - 1));
+        _keystream = null;
 
-        for (int i = 0; i < setting.length(); i++) {
-            if (!_alphabet.myContains(setting.charAt(i))) {
+        for (int i = 0; i < chars.length; i++) {
+            if (!_alphabet.myContains(chars[i])) {
                 throw error("Invalid settings");
             }
-            _rotors.get(i + 1).set(setting.charAt(i));
+            _rotors.get(i + 1).set(_alphabet.toInt(chars[i]));
+            _posns[i + 1] = _rotors.get(i + 1).setting();
+        }
+    }
+
+
+    /** Set my rotors according to SETTING, which holds numRotors()-1
+     *  indices into my alphabet, leftmost rotor first. */
+    void setRotors(int[] setting) {
+        _keystream = null;
+        for (int i = 0; i < setting.length; i += 1) {
+            _rotors.get(i + 1).set(setting[i]);
+            _posns[i + 1] = _rotors.get(i + 1).setting();
         }
     }
 
+    /** Return the current settings of my rotors after the reflector, as
+     *  indices into my alphabet, leftmost rotor first.  Together with the
+     *  settings line that set me up, these determine my state. */
+    int[] positions() {
+        int[] result = new int[numRotors() - 1];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _posns[i + 1];
+        }
+        return result;
+    }
+
+    /** Configure me according to SETTINGS.  If SETTINGS were also the
+     *  last applied and my rotors and plugboard have not been changed
+     *  since, only the rotor positions are reset. */
+    void setUp(MachineSettings settings) {
+        if (settings != _settings) {
+            insertRotors(settings.rotors());
+            _plugboard = settings.plugboard();
+            _settings = settings;
+        }
+        setRotors(settings.positions());
+        if (_keystreams != null) {
+            useKeystream(settings);
+        }
+    }
+
+    /** Remember the mappings of my rotors at each step from the start
+     *  states set by setUp, in about MAXBYTES bytes at most (see
+     *  Keystream), or stop remembering them if MAXBYTES is 0.  Later
+     *  messages from a start state already seen then look up the
+     *  mappings of their letters rather than passing them through the
+     *  rotors, although the rotors still advance.  Each start state is
+     *  held in one of a fixed number of slots, chosen by its hash,
+     *  displacing any other there. */
+    void cacheKeystreams(long maxBytes) {
+        _keystreams = null;
+        _keystream = null;
+        _keystreamBytes = maxBytes;
+        int size = _alphabet.size();
+        if (maxBytes <= 0 || size > Keystream.MAX_SIZE) {
+            return;
+        }
+        long steps = Math.min(Math.min(KEYSTREAM_STEPS,
+                                       Integer.MAX_VALUE / size),
+                              maxBytes / Keystream.bytes(size, 1));
+        if (steps == 0) {
+            return;
+        }
+        _keystreamSteps = (int) steps;
+        long slots = Math.min(MAX_KEYSTREAMS,
+                              maxBytes / Keystream.bytes(size,
+                                                         _keystreamSteps));
+        _keystreams = new Keystream[Integer.highestOneBit((int) slots)];
+    }
+
+    /** Start recording or looking up the keystream of the start state of
+     *  SETTINGS, to which I have just been set. */
+    private void useKeystream(MachineSettings settings) {
+        int h = Keystream.hash(settings);
+        int slot = (h ^ (h >>> 16)) & (_keystreams.length - 1);
+        Keystream keystream = _keystreams[slot];
+        if (keystream == null) {
+            keystream = new Keystream(_numRotorSlots, _alphabet.size(),
+                                      _keystreamSteps);
+            _keystreams[slot] = keystream;
+        }
+        if (!keystream.matches(settings)) {
+            keystream.reset(settings);
+        }
+        _keystream = keystream;
+        _step = -1;
+    }
+
+    /** Advance my rotors as for converting STEPS characters, but without
+     *  converting them, skipping whole periods of their motion (see
+     *  PeriodAnalyzer). */
+    void skip(long steps) {
+        int[] positions = positions();
+        new PeriodAnalyzer(this).advance(positions, steps);
+        setRotors(positions);
+    }
 
     /** Attempted solution for adding the ring setting. Incomplete.
      * @param setting is a settings line.*/
     void addRingSetting(String setting) {
-        assert (setting.length() == (_rotors.size() - 1));
-        for (int i = 0; i < setting.length(); i++) {
-            if (!_alphabet.myContains(setting.charAt(i))) {
+        int[] chars = setting.codePoints().toArray();
+        assert (chars.length == (_rotors.size() - 1));
+        for (int i = 0; i < chars.length; i++) {
+            if (!_alphabet.myContains(chars[i])) {
                 throw error("Invalid settings");
             }
         }
@@ -122,9 +370,19 @@ class Machine {
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        _settings = null;
         _plugboard = plugboard;
     }
 
+    /** Set the plugboard to the permutation taking each index K to
+     *  PLUGBOARD[K].  PLUGBOARD is copied into storage owned by this
+     *  machine, so it may be reused by the caller. */
+    void setPlugboard(int[] plugboard) {
+        _settings = null;
+        _settingsPlugboard.setMapping(plugboard);
+        _plugboard = _settingsPlugboard;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
@@ -135,63 +393,113 @@ class Machine {
             System.err.printf("[");
             for (int r = 1; r < numRotors(); r += 1) {
                 System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+                        alphabet().toCodePoint(getRotor(r).setting()));
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            System.err.printf("] %c -> ", alphabet().toCodePoint(c));
         }
 
         c = plugboard().permute(c);
 
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+            System.err.printf("%c -> ", alphabet().toCodePoint(c));
         }
-        c = applyRotors(c);
+        c = convertRotors(c);
         c = plugboard().permute(c);
 
         if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+            System.err.printf("%c%n", alphabet().toCodePoint(c));
         }
         return c;
     }
 
-    /** Advance all rotors to their next position. */
-    private void advanceRotors() {
-        int n = numRotors() - 1;
-
-        for (int q = 1; q < n; q++) {
-            if (_rotors.get(q + 1).atNotch()
-                  &&  _rotors.get(q + 1).rotates()
-                    && _rotors.get(q).rotates()) {
-
-                Rotor q1 = _rotors.get(q + 1);
-                Rotor q2 = _rotors.get(q);
-
-                if (!q1.isRotated()) {
-                    _rotors.get(q + 1).set((q1.setting() + 1));
-                    _rotors.get(q + 1).toggleRotated(true);
-                }
-                if (!q2.isRotated()) {
-                    _rotors.get(q).set((q2.setting() + 1));
-                    _rotors.get(q).toggleRotated(true);
-                }
-            }
+    /** Advance my rotors as convert does before converting each
+     *  character. */
+    void advance() {
+        advanceRotors();
+    }
 
+    /** Return the result of passing C (as an index in the range
+     *  0..alphabet size - 1) through my rotors and reflector in their
+     *  current positions, without the plugboard or advancing the
+     *  rotors.  Converting C is thus advance() followed by passing C
+     *  through plugboard(), this and plugboard() again. */
+    int convertRotors(int c) {
+        if (Main.verbose()) {
+            syncRotors();
+            return traceRotors(c);
         }
-        if (!_rotors.get(n).isRotated()) {
-            Rotor r = _rotors.get(n);
-            r.set((r.setting() + 1));
+        if (_keystream == null || _step < 0) {
+            return applyRotors(c);
         }
-
-        for (Rotor r : _rotors) {
-            r.toggleRotated(false);
+        int result = _keystream.get(_step, c);
+        if (result < 0) {
+            result = applyRotors(c);
+            _keystream.put(_step, c, result);
         }
-
+        return result;
     }
 
+    /** Advance all rotors to their next position.  The fast rotor always
+     *  advances, and each other rotating rotor advances if the rotating
+     *  rotor to its right is at a notch, or if it is at a notch itself and
+     *  the rotor to its left rotates.  Rotors are advanced left to right,
+     *  so that each test sees positions not yet advanced. */
+    private void advanceRotors() {
+        if (_keystream != null) {
+            _step += 1;
+            if (_step == _keystreamSteps) {
+                _keystream = null;
+            }
+        }
+        int[] posns = _posns;
+        boolean[] rotates = _rotates;
+        boolean[][] notches = _notches;
+        int last = posns.length - 1;
+        for (int q = 1; q <= last; q += 1) {
+            boolean advance = q == last
+                || rotates[q] && rotates[q + 1]
+                   && notches[q + 1][posns[q + 1]]
+                || rotates[q] && rotates[q - 1] && notches[q][posns[q]];
+            if (advance) {
+                posns[q] = posns[q] + 1 == _size ? 0 : posns[q] + 1;
+            }
+        }
+    }
 
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
+        int[] posns = _posns;
+        int[][] forward = _forward, backward = _backward;
+        int n = posns.length, size = _size;
+        for (int i = n - 1; i >= 0; i -= 1) {
+            int s = posns[i];
+            int a = c + s;
+            if (a >= size) {
+                a -= size;
+            }
+            c = forward[i][a] - s;
+            if (c < 0) {
+                c += size;
+            }
+        }
+        for (int i = 1; i < n; i += 1) {
+            int s = posns[i];
+            int a = c + s;
+            if (a >= size) {
+                a -= size;
+            }
+            c = backward[i][a] - s;
+            if (c < 0) {
+                c += size;
+            }
+        }
+        return c;
+    }
+
+    /** Return the result of applyRotors(C), computed by the Rotor objects
+     *  themselves, which report each step when verbose. */
+    private int traceRotors(int c) {
         int i = numRotors() - 1;
         for (; i > 0; i--) {
             c = _rotors.get(i).convertForward(c);
@@ -208,18 +516,93 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char c = msg.charAt(i);
+        String result;
+        if (_alphabet.isBmp()) {
+            char[] buf = msg.toCharArray();
+            result = new String(buf, 0, convert(buf, 0, buf.length, buf, 0));
+        } else {
+            StringBuilder out = new StringBuilder(msg.length());
+            msg.codePoints().forEach(c -> {
+                if (c != ' ') {
+                    out.appendCodePoint(
+                        _alphabet.toCodePoint(convert(_alphabet.toInt(c))));
+                }
+            });
+            result = out.toString();
+        }
+        return result;
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1] as for
+     *  convert(String), storing the result in OUT starting at OUTOFF and
+     *  returning its length.  Blanks are dropped, so the result is no
+     *  longer than LEN.  OUT may be IN, provided OUTOFF <= OFF.  My
+     *  alphabet must have no supplementary characters (see
+     *  Alphabet.isBmp), since they occupy two chars. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (!_alphabet.isBmp()) {
+            throw error("alphabet has characters outside the BMP");
+        }
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char c = in[i];
             if (c == ' ') {
                 continue;
             }
-            int c1 = _rotors.get(0).permutation().alphabet().toInt(c);
-            c1 = convert(c1);
-            c = _rotors.get(0).permutation().alphabet().toChar(c1);
-            result += c;
+            out[k] = _alphabet.toChar(convert(_alphabet.toInt(c)));
+            k += 1;
         }
-        return result;
+        return k - outOff;
+    }
+
+    /** Convert the LEN bytes IN[OFF .. OFF+LEN-1] as for convert(String),
+     *  storing the result in OUT starting at OUTOFF and returning its
+     *  length.  Bytes encode characters one to one, so my alphabet must
+     *  be single-byte.  Blanks are dropped, so the result is no longer
+     *  than LEN.  OUT may be IN, provided OUTOFF <= OFF. */
+    int convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            byte b = in[i];
+            if (b == ' ') {
+                continue;
+            }
+            int c = _alphabet.byteIndex(b);
+            if (c < 0) {
+                throw error("invalid message for alphabet.");
+            }
+            out[k] = _alphabet.toByte(convert(c));
+            k += 1;
+        }
+        return k - outOff;
+    }
+
+    /** Convert the bytes of IN from its position to its limit as for
+     *  convert(String), putting the results into OUT starting at its
+     *  position and stopping early if OUT fills.  Both positions are
+     *  advanced past the bytes consumed and produced.  Bytes encode
+     *  characters one to one, so my alphabet must be single-byte.  IN
+     *  and OUT may be the same buffer, in which case it is converted in
+     *  place.  Returns the number of bytes produced. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        int i = in.position(), end = in.limit();
+        int k = out.position(), outEnd = out.limit();
+        for (; i < end && k < outEnd; i += 1) {
+            byte b = in.get(i);
+            if (b == ' ') {
+                continue;
+            }
+            int c = _alphabet.byteIndex(b);
+            if (c < 0) {
+                throw error("invalid message for alphabet.");
+            }
+            out.put(k, _alphabet.toByte(convert(c)));
+            k += 1;
+        }
+        int produced = k - out.position();
+        in.position(i);
+        out.position(k);
+        return produced;
     }
 
     /** Common alphabet of my rotors. */
@@ -228,15 +611,83 @@ class Machine {
     /** Available Rotors. */
     private Collection<Rotor> _allRotors;
 
+    /** Available Rotors, indexed in iteration order of _allRotors. */
+    private final Rotor[] _available;
+
     /** Inserted Rotors. */
     private ArrayList<Rotor> _rotors = new ArrayList<>();
 
+    /** Number of rotor slots. */
+    private final int _numRotorSlots;
+
     /** number of Pawls. */
     private int _pawls;
 
     /** Plugboard of this machine. */
     private Permutation _plugboard;
 
+    /** The settings last applied by setUp, or null if my rotors or
+     *  plugboard have been changed since. */
+    private MachineSettings _settings;
+
+    /** Plugboard storage reused by setPlugboard(int[]). */
+    private final Permutation _settingsPlugboard;
+
+    /** Largest number of steps held in one keystream, and of keystreams
+     *  held. */
+    private static final int KEYSTREAM_STEPS = 1 << 16,
+        MAX_KEYSTREAMS = 1 << 10;
+
+    /** Slots holding keystreams by start state, or null if keystreams
+     *  are not kept. */
+    private Keystream[] _keystreams;
+
+    /** The limit on the size of _keystreams, in bytes. */
+    private long _keystreamBytes;
+
+    /** Number of steps held in each keystream. */
+    private int _keystreamSteps;
+
+    /** The keystream of my current start state, if it is being recorded
+     *  or looked up, or null. */
+    private Keystream _keystream;
+
+    /** Number of steps since the start state of _keystream, minus 1. */
+    private int _step;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** For each available rotor, its permutation and inverse as tables,
+     *  or null until it is first inserted or if its tables are shared. */
+    private final int[][] _forwardTables, _backwardTables;
+
+    /** For each available rotor, whether each position is a notch, or
+     *  null until it is first inserted. */
+    private final boolean[][] _notchTables;
+
+    /** The position of each inserted rotor, by slot.  These are the
+     *  current positions; those of the Rotor objects may be stale. */
+    private int[] _posns = new int[0];
+
+    /** The permutation and inverse tables of each inserted rotor. */
+    private int[][] _forward, _backward;
+
+    /** For each slot, the rotor with shared tables whose tables were
+     *  last copied into _slotForward and _slotBackward, or null. */
+    private Rotor[] _slotRotors = new Rotor[0];
+
+    /** For each slot, buffers holding the permutation and inverse tables
+     *  of _slotRotors, or null until a rotor with shared tables is first
+     *  inserted there. */
+    private int[][] _slotForward, _slotBackward;
+
+    /** True for each inserted rotor that rotates. */
+    private boolean[] _rotates;
+
+    /** For each inserted rotor, whether each position is a notch. */
+    private boolean[][] _notches;
+
 
 
 
@@ -0,0 +1,55 @@
+package enigma;
+
+/** A fully parsed settings line for a particular machine: the rotors to
+ *  insert, their initial positions and ring settings, and a prepared
+ *  plugboard.  Instances are immutable once built, so one instance may be
+ *  applied to its machine any number of times.
+ *  @author MS
+ */
+final class MachineSettings {
+
+    /** Settings from the line most recently read by PARSER, whose
+     *  plugboard is over ALPHABET. */
+    MachineSettings(SettingsParser parser, Alphabet alphabet) {
+        _rotors = parser.rotors().clone();
+        _positions = parser.positions().clone();
+        _rings = parser.hasRings() ? parser.rings().clone() : null;
+        _plugboard = new Permutation("", alphabet);
+        _plugboard.setMapping(parser.plugboard());
+    }
+
+    /** Return the indices of my rotors among the machine's available
+     *  rotors, reflector first.  The result must not be modified. */
+    int[] rotors() {
+        return _rotors;
+    }
+
+    /** Return my initial rotor positions, leftmost first.  The result
+     *  must not be modified. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return my ring settings, or null if there were none.  The result
+     *  must not be modified. */
+    int[] rings() {
+        return _rings;
+    }
+
+    /** Return my plugboard.  It must not be modified. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Rotor indices. */
+    private final int[] _rotors;
+
+    /** Initial positions. */
+    private final int[] _positions;
+
+    /** Ring settings, or null. */
+    private final int[] _rings;
+
+    /** Plugboard permutation. */
+    private final Permutation _plugboard;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import org.junit.Test;
 import org.junit.Rule;
@@ -77,4 +78,52 @@ public class MachineTest {
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
         assertEquals("", mach.convert(""));
     }
+
+    @Test
+    public void testSetUpFromCache() {
+        Machine mach = new Machine(AZ, 5, 3, new ArrayList<>(ROTORS.values()));
+        SettingsCache cache = new SettingsCache(mach, 5, 1);
+        String line = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        for (int i = 0; i < 3; i += 1) {
+            mach.setUp(cache.get(line));
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         mach.convert("FROMHISSHOULDERHIAWATHA"));
+        }
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        mach.setUp(cache.get("* B Beta III IV I AXLE"));
+        assertEquals(1, cache.size());
+        mach.setUp(cache.get(line));
+        assertEquals(3, cache.misses());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testRotorsAgreeWithFlatState() {
+        Machine mach = mach1();
+        for (int i = 0; i < 2000; i += 1) {
+            mach.advance();
+            int[] positions = mach.positions();
+            int c = i % 26, expected = c;
+            for (int r = 4; r > 0; r -= 1) {
+                assertEquals(positions[r - 1], mach.getRotor(r).setting());
+                expected = mach.getRotor(r).convertForward(expected);
+            }
+            expected = mach.getRotor(0).convertForward(expected);
+            for (int r = 1; r < 5; r += 1) {
+                expected = mach.getRotor(r).convertBackward(expected);
+            }
+            assertEquals(expected, mach.convertRotors(c));
+        }
+    }
+
+    @Test
+    public void testConvertBytes() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        byte[] buf = "xxFROMHIS SHOULDER HIAWATHA".getBytes();
+        int n = mach.convert(buf, 2, buf.length - 2, buf, 1);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(buf, 1, n));
+    }
 }
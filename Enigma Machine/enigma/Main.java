@@ -1,12 +1,25 @@
 package enigma;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.regex.Pattern;
+import jdk.jfr.FlightRecorder;
 import ucb.util.CommandArgs;
 
 import static enigma.EnigmaException.*;
@@ -24,34 +37,134 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  With --shared-tables=FILE, the rotor
+     *  tables are kept in FILE and shared with other runs (see
+     *  SharedTables).  With --pipeline=N, reading, conversion by N
+     *  workers, and writing run concurrently (see Pipeline).  With
+     *  --checkpoint=JOURNAL, which needs INPUT and OUTPUT files, the
+     *  progress of the run is recorded in JOURNAL every MB megabytes of
+     *  input (64 by default), and a run that finds JOURNAL left by an
+     *  interrupted one resumes from its last checkpoint (see Journal).
+     *  An INPUT or OUTPUT file whose name ends in ".gz" is decompressed
+     *  or compressed as gzip data on a thread of its own (see
+     *  GzipStreams).  With --bench, no files are used; instead, a
+     *  synthetic workload, described by --workload=SPEC, is generated and
+     *  converted in memory, and its performance reported (see Bench).
+     *  With --keystream-cache=MB, up to MB megabytes are used to remember
+     *  the rotor mappings of each block's start state, so that later
+     *  blocks from the same start state look them up (see Keystream).
+     *  Without options, the arguments are taken as they are, so that a
+     *  short run loads no option parser. */
     public static void main(String... args) {
         try {
+            if (plainArguments(args)) {
+                new Main(Arrays.asList(args)).process();
+                return;
+            }
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                new CommandArgs("--verbose --stats --metrics "
+                                + "--metrics-file=(.+) --shared-tables=(.+) "
+                                + "--pipeline=([1-9]\\d*) --checkpoint=(.+) "
+                                + "--checkpoint-every=([1-9]\\d*) "
+                                + "--keystream-cache=([1-9]\\d*) "
+                                + "--bench --workload=(.*) "
+                                + "--=(.*){0,3}", args);
+            boolean bench = options.contains("--bench");
+            if (!options.ok() || options.get("--").isEmpty() != bench) {
+                throw error("Usage: java enigma.Main [--verbose] [--stats] "
+                            + "[--metrics] [--metrics-file=FILE] "
+                            + "[--shared-tables=FILE] [--pipeline=N] "
+                            + "[--checkpoint=JOURNAL [--checkpoint-every=MB]] "
+                            + "[--keystream-cache=MB] "
+                            + "CONFIG [INPUT [OUTPUT]]\n"
+                            + "   or: java enigma.Main [--pipeline=N] "
+                            + "--bench [--workload=SPEC]");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            _showStats = options.contains("--stats");
+            if (options.contains("--pipeline")) {
+                _pipelineWorkers =
+                    Integer.parseInt(options.getLast("--pipeline"));
+            }
+            if (options.contains("--checkpoint")) {
+                long megabytes = DEFAULT_CHECKPOINT_MB;
+                if (options.contains("--checkpoint-every")) {
+                    megabytes = Long.parseLong(
+                        options.getLast("--checkpoint-every"));
+                }
+                setCheckpoints(new File(options.getLast("--checkpoint")),
+                               megabytes << 20);
+            }
+            if (options.contains("--keystream-cache")) {
+                _keystreamBytes = Long.parseLong(
+                    options.getLast("--keystream-cache")) << 20;
+            }
+            if (options.contains("--shared-tables")) {
+                _sharedTables =
+                    new File(options.getLast("--shared-tables"));
+            }
+            if (options.contains("--metrics")
+                || options.contains("--metrics-file")) {
+                Metrics.enable();
+            }
+            if (options.contains("--metrics-file")) {
+                Metrics.get().startSnapshots(
+                    new File(options.getLast("--metrics-file")),
+                    METRICS_PERIOD);
+            }
+            if (bench) {
+                String spec = options.getLast("--workload");
+                Bench.run(spec == null ? "" : spec, System.out);
+            } else {
+                new Main(options.get("--")).process();
+            }
+            Metrics.get().stopSnapshots();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
         }
+        Metrics.get().stopSnapshots();
         System.exit(1);
     }
 
+    /** Return true iff ARGS are one to three file names, with no
+     *  options. */
+    private static boolean plainArguments(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            return false;
+        }
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        _configFile = new File(args.get(0));
+        _config = getConfig(args.get(0));
+
+        if (_checkpointFile != null) {
+            if (args.size() < 3) {
+                throw error("--checkpoint needs input and output files");
+            }
+            _inputName = args.get(1);
+            _outputName = args.get(2);
+            if (GzipStreams.isGzip(_inputName)
+                || GzipStreams.isGzip(_outputName)) {
+                throw error("--checkpoint cannot be used with gzip files");
+            }
+            return;
+        }
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _inputStream = getInputStream(args.get(1));
         } else {
-            _input = new Scanner(System.in);
+            _inputStream = System.in;
         }
 
         if (args.size() > 2) {
@@ -61,18 +174,123 @@ public final class Main {
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** A simulator applying MACHINE, whose settings lines are looked up
+     *  in CACHE, to the messages in the file named INPUT and writing the
+     *  results to the file named OUTPUT (see Batch). */
+    Main(Machine machine, SettingsCache cache, String input, String output) {
+        _machine = machine;
+        _settingsCache = cache;
+        _inputStream = getInputStream(input);
         try {
-            return new Scanner(new File(name));
+            _output = getOutput(output);
+        } catch (EnigmaException excp) {
+            closeInput();
+            throw excp;
+        }
+    }
+
+    /** A simulator applying MACHINE to the messages in INPUT and writing
+     *  the results to OUTPUT (see Acceptance). */
+    Main(Machine machine, InputStream input, PrintStream output) {
+        _machine = machine;
+        _inputStream = input;
+        _output = output;
+    }
+
+    /** A simulator reading its configuration from CONFIG and messages
+     *  from INPUT, and writing results to OUTPUT. */
+    Main(Scanner config, Scanner input, PrintStream output) {
+        _config = lines(config);
+        _input = input;
+        _output = output;
+    }
+
+    /** Return an Enigma machine configured from the contents of CONFIG,
+     *  with no rotors inserted. */
+    static Machine configure(Scanner config) {
+        Main main = new Main(config, null, null);
+        return main.config(main._config);
+    }
+
+    /** Record progress in JOURNAL every INTERVAL bytes of input, or not
+     *  at all if JOURNAL is null (see main). */
+    static void setCheckpoints(File journal, long interval) {
+        _checkpointFile = journal;
+        _checkpointInterval = interval;
+    }
+
+    /** Return the lines of the configuration file named NAME.  The file
+     *  is read without a Scanner, whose setup would take much of the
+     *  time of a short run. */
+    private List<String> getConfig(String name) {
+        try (BufferedReader in = new BufferedReader(new FileReader(name))) {
+            List<String> result = new ArrayList<>();
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                result.add(line);
+            }
+            return result;
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return the remaining lines of CONFIG. */
+    private static List<String> lines(Scanner config) {
+        List<String> result = new ArrayList<>();
+        while (config.hasNextLine()) {
+            result.add(config.nextLine());
+        }
+        return result;
+    }
+
+    /** Return the blank-separated words of LINE, followed by the rest of
+     *  LINE after the first LIMIT words if LIMIT > 0 and there are that
+     *  many. */
+    private static List<String> words(String line, int limit) {
+        List<String> result = new ArrayList<>();
+        int i = 0, n = line.length();
+        while (true) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            if (i == n) {
+                return result;
+            }
+            if (limit > 0 && result.size() == limit) {
+                result.add(line.substring(i));
+                return result;
+            }
+            int start = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            result.add(line.substring(start, i));
+        }
+    }
+
+    /** Return an InputStream reading from the file named NAME, which is
+     *  decompressed if it is a gzip file. */
+    private InputStream getInputStream(String name) {
+        try {
+            InputStream in = new FileInputStream(name);
+            _closeInput = true;
+            return GzipStreams.isGzip(name) ? GzipStreams.inflating(in) : in;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, which is
+     *  compressed if it is a gzip file. */
     private PrintStream getOutput(String name) {
         try {
+            _outputName = name;
+            _closeOutput = true;
+            if (GzipStreams.isGzip(name)) {
+                return new PrintStream(
+                    GzipStreams.deflating(new FileOutputStream(name)));
+            }
             return new PrintStream(new File(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
@@ -81,88 +299,485 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine m = config(_config);
-        applyFreshMachine(m);
+     *  results to _output.  The input is consumed one line at a time by a
+     *  two-state machine: while AWAITING_SETTINGS, blank lines are echoed
+     *  and anything else must be a settings line; once IN_MESSAGE, each
+     *  line is converted until the next settings line starts a new block.
+     *  Stack depth and retained state do not grow with the number of
+     *  blocks.  When the input is a byte stream and the alphabet is
+     *  single-byte, messages are converted as bytes, without decoding
+     *  or encoding characters. */
+    void process() {
+        boolean timed = Metrics.enabled();
+        long configStart = timed ? System.nanoTime() : 0;
+        Machine m;
+        if (_machine != null) {
+            m = _machine;
+        } else {
+            if (_sharedTables != null && _configFile != null) {
+                m = SharedTables.machine(_sharedTables, _configFile,
+                                         () -> config(_config));
+            } else {
+                m = config(_config);
+            }
+            if (_keystreamBytes > 0) {
+                m.cacheKeystreams(_keystreamBytes);
+            }
+        }
+        if (timed) {
+            Metrics.get().recordConfig(System.nanoTime() - configStart);
+        }
+        try {
+            if (_checkpointFile != null) {
+                if (!m.alphabet().isSingleByte() || _pipelineWorkers > 0) {
+                    throw error("--checkpoint needs a single-byte alphabet "
+                                + "and cannot be used with --pipeline");
+                }
+                processBytes(m);
+            } else if (_inputStream != null && m.alphabet().isSingleByte()
+                && _pipelineWorkers > 0) {
+                new Pipeline(m, _pipelineWorkers, _stats).run(_inputStream,
+                                                              _output);
+            } else if (_inputStream != null && m.alphabet().isSingleByte()) {
+                processBytes(m);
+            } else {
+                if (_input == null) {
+                    _input = new Scanner(_inputStream);
+                }
+                processLines(m);
+            }
+        } finally {
+            closeInput();
+            if (_closeOutput) {
+                _output.close();
+            }
+            closeChannels();
+        }
+        if (_closeOutput && _output.checkError()) {
+            throw error("could not write %s", _outputName);
+        }
+        if (_showStats) {
+            System.err.println(_stats);
+            if (_settingsCache != null) {
+                System.err.println(_settingsCache);
+            }
+        }
     }
 
-    private void applyFreshMachine(Machine m) {
-        String settings = _input.nextLine();
-        while (settings == "") {
-            settings = _input.nextLine();
-            _output.println();
+    /** Close the channels of a run with checkpoints, if opened. */
+    private void closeChannels() {
+        for (FileChannel channel : new FileChannel[] { _inputChannel,
+                                                       _outputChannel }) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException excp) {
+                /* Nothing more will be read or written. */
+            }
         }
+    }
 
-        setUp(m, settings);
+    /** Close _inputStream if I opened it. */
+    private void closeInput() {
+        if (_closeInput) {
+            try {
+                _inputStream.close();
+            } catch (IOException excp) {
+                /* Everything needed has been read. */
+            }
+        }
+    }
+
+    /** Apply M to the lines of _input as described for process(). */
+    private void processLines(Machine m) {
+        State state = State.AWAITING_SETTINGS;
+        Metrics.Recorder recorder = Metrics.recorder();
         while (_input.hasNextLine()) {
-            if (!_input.hasNext("\\*")) {
-                String out = m.convert(_input.nextLine());
-                if (out.equals("")) {
+            String line = _input.nextLine();
+            boolean timed = recorder != null && recorder.sampling();
+            long start = timed ? System.nanoTime() : 0;
+            switch (state) {
+            case AWAITING_SETTINGS:
+                if (line.isEmpty()) {
                     _output.println();
-                    continue;
                 } else {
+                    setUp(m, line);
+                    startBlock();
+                    state = State.IN_MESSAGE;
+                }
+                break;
+            case IN_MESSAGE:
+                if (isSettingsLine(line)) {
+                    endBlock(m);
+                    setUp(m, line);
+                    startBlock();
+                } else {
+                    String out = m.convert(line);
+                    long converted = timed ? System.nanoTime() : 0;
+                    _stats.addMessage(out.length());
                     _output.println(format(out));
+                    if (recorder != null) {
+                        recorder.message(out.length());
+                        if (timed) {
+                            recorder.timing(start, converted,
+                                            System.nanoTime());
+                        }
+                    }
+                }
+                break;
+            default:
+                throw error("unexpected input state");
+            }
+        }
+        if (state == State.IN_MESSAGE) {
+            endBlock(m);
+        }
+        if (recorder != null) {
+            recorder.flush();
+        }
+    }
+
+    /** Apply M, whose alphabet is single-byte, to the lines of
+     *  _inputStream as described for process(), converting each message
+     *  line in place in the input buffer. */
+    private void processBytes(Machine m) {
+        State state = State.AWAITING_SETTINGS;
+        long inputBase = 0;
+        if (_checkpointFile != null) {
+            Journal.Entry resumed = openCheckpointed();
+            if (resumed != null) {
+                inputBase = resumed.input;
+                _blockSettings = resumed.settings;
+                setUp(m, resumed.settings);
+                m.setRotors(resumed.positions.codePoints()
+                            .map(m.alphabet()::toInt).toArray());
+                startBlock();
+                state = State.IN_MESSAGE;
+            }
+            _nextCheckpoint = inputBase + _checkpointInterval;
+        }
+        LineReader lines = new LineReader(_inputStream);
+        Metrics.Recorder recorder = Metrics.recorder();
+        try {
+            while (lines.next()) {
+                byte[] buf = lines.buffer();
+                int off = lines.start(), len = lines.length();
+                boolean timed = recorder != null && recorder.sampling();
+                long start = timed ? System.nanoTime() : 0;
+                switch (state) {
+                case AWAITING_SETTINGS:
+                    if (len == 0) {
+                        emitLine(buf, 0, 0);
+                    } else {
+                        setUp(m, lines);
+                        startBlock();
+                        state = State.IN_MESSAGE;
+                    }
+                    break;
+                case IN_MESSAGE:
+                    if (isSettingsLine(buf, off, len)) {
+                        endBlock(m);
+                        setUp(m, lines);
+                        startBlock();
+                    } else {
+                        int n = m.convert(buf, off, len, buf, off);
+                        long converted = timed ? System.nanoTime() : 0;
+                        _stats.addMessage(n);
+                        emitLine(buf, off, n);
+                        if (recorder != null) {
+                            recorder.message(n);
+                            if (timed) {
+                                recorder.timing(start, converted,
+                                                System.nanoTime());
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    throw error("unexpected input state");
+                }
+                if (_journal != null && state == State.IN_MESSAGE
+                    && inputBase + lines.endOffset() >= _nextCheckpoint) {
+                    checkpoint(m, inputBase + lines.endOffset());
                 }
+            }
+            if (state == State.IN_MESSAGE) {
+                endBlock(m);
+            }
+            if (_journal != null) {
+                syncOutput();
+                _journal.finish();
+            }
+        } finally {
+            flushOutput();
+            if (recorder != null) {
+                recorder.flush();
+            }
+        }
+    }
+
+    /** Open the input and output files and the journal for a run with
+     *  checkpoints.  If the journal holds a checkpoint, truncate the
+     *  output and position the input to match it and return it;
+     *  otherwise start afresh and return null. */
+    private Journal.Entry openCheckpointed() {
+        File input = new File(_inputName);
+        Journal journal = new Journal(_checkpointFile,
+                                      String.format("%016x %d",
+                                          SharedTables.fingerprint(
+                                              _configFile),
+                                          input.length()));
+        Journal.Entry last = journal.last();
+        try {
+            FileChannel in = FileChannel.open(input.toPath(),
+                                              StandardOpenOption.READ);
+            _inputChannel = in;
+            FileChannel out = FileChannel.open(new File(_outputName).toPath(),
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE);
+            _outputChannel = out;
+            if (last == null) {
+                out.truncate(0);
+                journal.start();
+            } else if (out.size() < last.output) {
+                throw error("%s is shorter than its last checkpoint",
+                            _outputName);
             } else {
-                applyFreshMachine(m);
+                out.truncate(last.output);
+                in.position(last.input);
+                journal.resume();
             }
+            out.position(out.size());
+            _inputStream = Channels.newInputStream(in);
+            _output = new PrintStream(Channels.newOutputStream(out));
+        } catch (IOException excp) {
+            throw error("could not open %s or %s", _inputName, _outputName);
         }
+        _journal = journal;
+        return last;
+    }
+
+    /** Record a checkpoint for M after INPUTOFFSET bytes of input, once
+     *  the output so far is on disk. */
+    private void checkpoint(Machine m, long inputOffset) {
+        syncOutput();
+        StringBuilder positions = new StringBuilder();
+        for (int p : m.positions()) {
+            positions.appendCodePoint(m.alphabet().toCodePoint(p));
+        }
+        try {
+            _journal.append(inputOffset, _outputChannel.position(),
+                            positions.toString(), _blockSettings);
+        } catch (IOException excp) {
+            throw error("could not write %s", _outputName);
+        }
+        _nextCheckpoint = inputOffset + _checkpointInterval;
+    }
+
+    /** Write all pending output and force it to disk.  _output does
+     *  not throw on a failed write, so its error flag is checked before
+     *  any checkpoint can claim the output. */
+    private void syncOutput() {
+        flushOutput();
+        if (_output.checkError()) {
+            throw error("could not write %s", _outputName);
+        }
+        try {
+            _outputChannel.force(false);
+        } catch (IOException excp) {
+            throw error("could not write %s", _outputName);
+        }
+    }
+
+    /** Queue the LEN bytes MSG[OFF .. OFF+LEN-1] for output in groups of
+     *  five, as by format, followed by a line separator. */
+    private void emitLine(byte[] msg, int off, int len) {
+        int need = len + len / 5 + NEWLINE.length;
+        if (_outLength + need > _outBuffer.length) {
+            flushOutput();
+            if (need > _outBuffer.length) {
+                _outBuffer = new byte[need];
+            }
+        }
+        _outLength = formatLine(msg, off, len, _outBuffer, _outLength);
+    }
+
+    /** Store the LEN bytes MSG[OFF .. OFF+LEN-1] in groups of five, as by
+     *  format, followed by a line separator, in OUT starting at K, which
+     *  must have room for them.  Return the index just past them. */
+    static int formatLine(byte[] msg, int off, int len, byte[] out, int k) {
+        for (int i = 0; i < len; i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                out[k] = ' ';
+                k += 1;
+            }
+            out[k] = msg[off + i];
+            k += 1;
+        }
+        for (byte b : NEWLINE) {
+            out[k] = b;
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Write any bytes queued by emitLine to _output. */
+    private void flushOutput() {
+        _output.write(_outBuffer, 0, _outLength);
+        _output.flush();
+        _outLength = 0;
+    }
+
+    /** Begin timing a message block whose settings have been applied. */
+    private void startBlock() {
+        _stats.startBlock();
+        if (_blockEvent == null && recording()) {
+            _blockEvent = new MessageBlockEvent();
+        }
+        if (_blockEvent != null) {
+            _blockEvent.begin();
+        }
+    }
+
+    /** Finish timing the current message block, converted by M. */
+    private void endBlock(Machine m) {
+        _stats.endBlock();
+        if (_blockEvent != null && _blockEvent.shouldCommit()) {
+            _blockEvent.block = _stats.blocks() - 1;
+            _blockEvent.rotorOrder = rotorOrder(m);
+            _blockEvent.messages = (int) _stats.lastBlockMessages();
+            _blockEvent.chars = _stats.lastBlockChars();
+            _blockEvent.commit();
+            _blockEvent = new MessageBlockEvent();
+        }
+    }
+
+    /** Return true iff the flight recorder has been started, so that
+     *  flight recorder events may be recorded.  Until then, no event is
+     *  created: loading the first event class starts the recorder's
+     *  bookkeeping, which would take most of the time of a short run. */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Return the names of the rotors in M, separated by blanks. */
+    static String rotorOrder(Machine m) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < m.numRotors(); k += 1) {
+            if (k > 0) {
+                result.append(' ');
+            }
+            result.append(m.getRotor(k).name());
+        }
+        return result.toString();
+    }
+
+    /** Return true iff the LEN bytes LINE[OFF .. OFF+LEN-1] begin a new
+     *  message block, as for isSettingsLine(String). */
+    static boolean isSettingsLine(byte[] line, int off, int len) {
+        int i, end = off + len;
+        for (i = off; i < end && isBlank(line[i]); i += 1) {
+            continue;
+        }
+        return i < end && line[i] == '*'
+            && (i + 1 == end || isBlank(line[i + 1]));
+    }
+
+    /** Return true iff B encodes an ASCII whitespace character. */
+    private static boolean isBlank(byte b) {
+        return b >= 0 && Character.isWhitespace(b);
+    }
+
+    /** Return true iff LINE begins a new message block, that is, if its
+     *  first token is "*". */
+    static boolean isSettingsLine(String line) {
+        int i;
+        for (i = 0; i < line.length(); i += 1) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                break;
+            }
+        }
+        return i < line.length() && line.charAt(i) == '*'
+            && (i + 1 == line.length()
+                || Character.isWhitespace(line.charAt(i + 1)));
+    }
+
+    /** Return the throughput statistics gathered by process(). */
+    BlockStats stats() {
+        return _stats;
     }
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config.
-     *  @param config is the scanner that reads the config file.
+     *  @param config is the lines of the config file.
      *  @return a configurated machine.*/
-    private Machine config(Scanner config) {
+    private Machine config(List<String> config) {
+        if (!recording()) {
+            return readConfig(config);
+        }
+        ConfigLoadEvent event = new ConfigLoadEvent();
+        event.begin();
+        Machine m = readConfig(config);
+        if (event.shouldCommit()) {
+            event.alphabetSize = _alphabet.size();
+            event.rotorSlots = _numRotors;
+            event.pawls = _numPawls;
+            event.rotorsAvailable = m.numAvailableRotors();
+            event.commit();
+        }
+        return m;
+    }
+
+    /** Return an Enigma machine configured from the lines of LINES. */
+    private Machine readConfig(List<String> lines) {
+        Iterator<String> config = lines.iterator();
         alphaPawlRotorRead(config);
         ArrayList<Rotor> allRotors = new ArrayList<>();
         Machine m = new Machine(_alphabet, _numRotors, _numPawls, allRotors);
         Rotor lastAdded = null;
         int i = -1;
-        while (config.hasNextLine()) {
-            String newLine = config.nextLine().trim();
-            while (newLine.matches("[\\s]*")) {
-                if (config.hasNextLine()) {
-                    newLine = config.nextLine();
+        while (config.hasNext()) {
+            String newLine = config.next().trim();
+            while (Syntax.BLANK.matcher(newLine).matches()) {
+                if (config.hasNext()) {
+                    newLine = config.next();
                 } else {
-                    return m;
+                    return new Machine(_alphabet, _numRotors, _numPawls,
+                                       allRotors);
                 }
             }
-            Scanner line = new Scanner(newLine);
-            if (newLine.matches(_movingRotor)) {
+            List<String> line = words(newLine, 2);
+            if (Syntax.MOVING_ROTOR.matcher(newLine).matches()) {
                 i += 1;
-                String name = line.next();
-                String notches = line.next().substring(1);
-                String perm = line.nextLine();
+                String name = line.get(0);
+                String notches = line.get(1).substring(1);
+                String perm = line.get(2);
                 Permutation p = new Permutation(perm, _alphabet);
                 MovingRotor r = new MovingRotor(name, p, notches);
                 lastAdded = r;
                 allRotors.add(r);
-            } else if (newLine.matches(_fixedRotor)) {
+            } else if (Syntax.FIXED_ROTOR.matcher(newLine).matches()) {
                 i += 1;
-                String name = line.next();
-                line.next();
-                String perm = line.nextLine();
+                String name = line.get(0);
+                String perm = line.get(2);
                 Permutation p = new Permutation(perm, _alphabet);
                 FixedRotor r = new FixedRotor(name, p);
                 lastAdded = r;
                 allRotors.add(r);
-            } else if (newLine.matches(_reflectingRotor)) {
+            } else if (Syntax.REFLECTOR.matcher(newLine).matches()) {
                 i += 1;
-                String name = line.next();
-                line.next();
-                String perm = line.nextLine();
+                String name = line.get(0);
+                String perm = line.get(2);
                 Permutation p = new Permutation(perm, _alphabet);
                 Reflector r = new Reflector(name, p);
                 lastAdded = r;
                 allRotors.add(r);
-            } else if (newLine.matches(_continuedPerm)
+            } else if (Syntax.CONTINUED_PERM.matcher(newLine).matches()
                     && lastAdded != null) {
                 allRotors.remove(i);
-                Scanner sc = new Scanner(newLine);
-                while (sc.hasNext()) {
-                    lastAdded.permutation().addCycle(sc.next());
+                for (String cycle : words(newLine, 0)) {
+                    lastAdded.permutation().addCycle(cycle);
                 }
                 Rotor temp = lastAdded;
                 allRotors.add(temp);
@@ -176,30 +791,30 @@ public final class Main {
     }
 
     /** Just because I am a contrarian.
-     * @param config is the scanner that reads the config file.*/
-    public void alphaPawlRotorRead(Scanner config) {
-        String alphabet = config.nextLine();
+     * @param config iterates over the lines of the config file.*/
+    public void alphaPawlRotorRead(Iterator<String> config) {
+        String alphabet = config.next();
         while (alphabet.equals("")) {
-            alphabet = config.nextLine();
+            alphabet = config.next();
         }
         alphabet = alphabet.trim();
-        if (!alphabet.matches(_alpha)) {
+        if (!Syntax.ALPHABET.matcher(alphabet).matches()) {
             throw error("invalid alphabet");
         } else {
             _alphabet = new Alphabet(alphabet);
         }
-        String check = config.nextLine();
-        Scanner rp = new Scanner(check);
-        if (!check.matches("([\\s]*[\\d][\\s]+[\\d][\\s]*)")) {
+        String check = config.next();
+        if (!Syntax.COUNTS.matcher(check).matches()) {
             throw error("where are the pawls and rotors?!");
         }
+        List<String> counts = words(check, 0);
         try {
-            _numRotors = Integer.parseInt(rp.next());
+            _numRotors = Integer.parseInt(counts.get(0));
         } catch (EnigmaException excp) {
             throw error("Rotors not well formed");
         }
         try {
-            _numPawls = Integer.parseInt(rp.next());
+            _numPawls = Integer.parseInt(counts.get(1));
         } catch (EnigmaException excp) {
             throw error("Pawls not well formed");
         }
@@ -211,69 +826,57 @@ public final class Main {
 
 
 
-     /** Set M according to the specification given on SETTINGS,
+    /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
     private void setUp(Machine M, String settings) {
-        settings = settings.trim();
-        settings.replaceAll("[\\s]*", " ");
-
-
-        if (!settings.startsWith("*")) {
-            throw error("invalid settings line");
+        boolean timed = Metrics.enabled();
+        long start = timed ? System.nanoTime() : 0;
+        if (_settingsCache == null) {
+            _settingsCache = new SettingsCache(M, M.rotorSlots(),
+                                               SettingsCache.DEFAULT_CAPACITY);
         }
-        if ((!checkSettings(settings))) {
-            throw error("invalid settings line");
+        M.setUp(_settingsCache.get(settings));
+        if (timed) {
+            Metrics.get().recordSettings(System.nanoTime() - start);
         }
-        Scanner s = new Scanner(settings);
-        s.next();
+    }
 
-        String rotors = s.next();
-        for (int i = 0; i < (_numRotors - 1); i++) {
-            rotors += " " + s.next();
+    /** Set M according to the settings line current in LINES.  Unless
+     *  it must be kept for the journal, the line is looked up as bytes,
+     *  so that a line already seen is applied without allocating. */
+    private void setUp(Machine M, LineReader lines) {
+        if (_journal != null) {
+            _blockSettings = lines.text();
+            setUp(M, _blockSettings);
+            return;
         }
-
-        String[] rotors1 = rotors.split(" ");
-
-
-        if (M.numRotors() == 0) {
-            M.insertRotors(rotors1);
-        } else {
-            M.resetRotors();
-            M.insertRotors(rotors1);
+        boolean timed = Metrics.enabled();
+        long start = timed ? System.nanoTime() : 0;
+        if (_settingsCache == null) {
+            _settingsCache = new SettingsCache(M, M.rotorSlots(),
+                                               SettingsCache.DEFAULT_CAPACITY);
         }
-
-        M.setRotors(s.next());
-
-        if (!(s.hasNext("([\\s]*(([\\(].+[\\)])*\\s*)+)"))
-               && s.hasNext()) {
-            M.addRingSetting(s.next());
-        }
-        if (s.hasNext()) {
-            String perms = s.next();
-            while (s.hasNext()) {
-                perms += " " + s.next();
-            }
-            Permutation p = new Permutation(perms, _alphabet);
-            M.setPlugboard(p);
-        } else {
-            Permutation p = new Permutation("", _alphabet);
-            M.setPlugboard(p);
+        M.setUp(_settingsCache.get(lines.buffer(), lines.start(),
+                                   lines.length()));
+        if (timed) {
+            Metrics.get().recordSettings(System.nanoTime() - start);
         }
     }
 
-    boolean checkSettings(String settings) {
-        Scanner sc = new Scanner(settings);
-        int c = 0;
-        while (!(sc.hasNext("([\\s]*(([\\(].+[\\)])*\\s*)+)"))
-                && sc.hasNext()) {
-            c += 1;
-            sc.next();
-        }
-        return (c == 2 + _numRotors || c == 3 + _numRotors);
+    /** Return the cache of parsed settings lines, or null if no settings
+     *  line has been read yet. */
+    SettingsCache settingsCache() {
+        return _settingsCache;
     }
 
 
 
+    /** Return the number of conversion workers given by --pipeline, or
+     *  0 if conversion is not pipelined. */
+    static int pipelineWorkers() {
+        return _pipelineWorkers;
+    }
+
     /** Return true iff verbose option specified. */
     static boolean verbose() {
         return _verbose;
@@ -282,16 +885,20 @@ public final class Main {
     /** formats MSG into groups of five (except that the last group may
      *  have fewer letters).
      *  @return a correctly formatted string*/
-    private String format(String msg) {
-        String result = "";
-        result += msg.charAt(0);
-        for (int i = 1; i < msg.length(); i++) {
-            if (i % 5 == 0) {
-                result += " ";
+    static String format(String msg) {
+        if (msg.isEmpty()) {
+            return msg;
+        }
+        StringBuilder result = new StringBuilder(msg.length() * 6 / 5);
+        for (int i = 0, k = 0; k < msg.length(); i++) {
+            if (i > 0 && i % 5 == 0) {
+                result.append(' ');
             }
-            result += msg.charAt(i);
+            int ch = msg.codePointAt(k);
+            result.appendCodePoint(ch);
+            k += Character.charCount(ch);
         }
-        return result;
+        return result.toString();
     }
 
     /** Number of rotors. */
@@ -300,35 +907,132 @@ public final class Main {
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
-    /** Source of input messages. */
+    /** Source of input messages, when read as characters. */
     private Scanner _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Source of input messages, when read as bytes. */
+    private InputStream _inputStream;
+
+    /** Line separator written after each output line. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /** Output bytes not yet written to _output. */
+    private byte[] _outBuffer = new byte[1 << 16];
+
+    /** Number of bytes queued in _outBuffer. */
+    private int _outLength;
+
+    /** Lines of the machine configuration. */
+    private List<String> _config;
+
+    /** The configuration file, if known. */
+    private File _configFile;
+
+    /** Names of the input and output files of a run with checkpoints;
+     *  _outputName also names any other output file I opened. */
+    private String _inputName, _outputName;
+
+    /** Channels reading the input and writing the output of a run with
+     *  checkpoints, closed at the end of process(). */
+    private FileChannel _inputChannel, _outputChannel;
+
+    /** Checkpoint journal of this run, or null. */
+    private Journal _journal;
+
+    /** Settings line of the current block. */
+    private String _blockSettings;
+
+    /** Input offset at or after which the next checkpoint is taken. */
+    private long _nextCheckpoint;
+
+    /** Journal file given by --checkpoint, or null. */
+    private static File _checkpointFile;
+
+    /** Bytes of input between checkpoints. */
+    private static long _checkpointInterval;
+
+    /** Default --checkpoint-every, in megabytes. */
+    private static final long DEFAULT_CHECKPOINT_MB = 64;
+
+    /** Number of conversion workers given by --pipeline, or 0. */
+    private static int _pipelineWorkers;
+
+    /** The shared rotor table file given by --shared-tables, or null. */
+    private static File _sharedTables;
+
+    /** Bytes used to remember keystreams (see --keystream-cache), or 0. */
+    private static long _keystreamBytes;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** True iff I opened _inputStream, and so must close it. */
+    private boolean _closeInput;
+
+    /** True iff I opened _output, and so must close it (which also
+     *  completes compressed output). */
+    private boolean _closeOutput;
+
+    /** Machine supplied at construction, or null if it is to be read
+     *  from _config. */
+    private Machine _machine;
+
     /** True if --verbose specified. */
     private static boolean _verbose;
 
+    /** Milliseconds between metrics snapshots written for
+     *  --metrics-file. */
+    private static final long METRICS_PERIOD = 1000;
+
+    /** True if --stats specified. */
+    private static boolean _showStats;
+
+    /** The states of the input reader in process(). */
+    private enum State {
+        /** Before the first settings line of the input. */
+        AWAITING_SETTINGS,
+        /** After a settings line, converting message lines. */
+        IN_MESSAGE
+    }
+
+    /** Parsed settings lines, created with the machine. */
+    private SettingsCache _settingsCache;
+
+    /** Flight recorder event for the current message block, or null if
+     *  none has been needed (see recording). */
+    private MessageBlockEvent _blockEvent;
+
+    /** Per-block throughput statistics for this run. */
+    private final BlockStats _stats = new BlockStats();
+
     /** Number of rotors. */
     private int _numPawls;
 
-    /** REGEX for alphabet. */
-    private String _alpha =
-            "^[^\\s\\)\\(*]+";
-    /** Regex for moving rotor. */
-    private String _movingRotor =
-            "^[\\w]+[\\s]+[M][\\w]+[\\s]+(([\\(].+[\\)])\\s*)+";
-    /** Regex for reflecting rotor. */
-    private String _reflectingRotor =
-            "^[\\w]+[\\s]+[R][\\s]+(([\\(].+[\\)])\\s*)+";
-    /** Regex for fixed rotor.. */
-    private String _fixedRotor =
-            "^[\\w]+[\\s]+[N][\\s]+(([\\(].+[\\)])\\s*)+";
-    /** regex for a continued permutation. */
-    private String _continuedPerm =
-            "([\\s]*(([\\(].+[\\)])*\\s*)+)";
+    /** Patterns of the lines of a configuration.  They are compiled once,
+     *  when the first configuration is read, rather than on every
+     *  match. */
+    private static class Syntax {
+        /** A blank line. */
+        static final Pattern BLANK = Pattern.compile("[\\s]*");
+        /** An alphabet. */
+        static final Pattern ALPHABET =
+            Pattern.compile("^[^\\s\\)\\(*]+");
+        /** The numbers of rotor slots and pawls. */
+        static final Pattern COUNTS =
+            Pattern.compile("([\\s]*[\\d][\\s]+[\\d][\\s]*)");
+        /** A moving rotor. */
+        static final Pattern MOVING_ROTOR = Pattern.compile(
+            "^[\\w]+[\\s]+[M][^\\s()]+[\\s]+(([\\(].+[\\)])\\s*)+");
+        /** A reflecting rotor. */
+        static final Pattern REFLECTOR = Pattern.compile(
+            "^[\\w]+[\\s]+[R][\\s]+(([\\(].+[\\)])\\s*)+");
+        /** A fixed rotor. */
+        static final Pattern FIXED_ROTOR = Pattern.compile(
+            "^[\\w]+[\\s]+[N][\\s]+(([\\(].+[\\)])\\s*)+");
+        /** A continued permutation. */
+        static final Pattern CONTINUED_PERM =
+            Pattern.compile("([\\s]*(([\\(].+[\\)])*\\s*)+)");
+    }
 
 }
@@ -0,0 +1,70 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author MS
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of Main applying the naval machine to INPUT,
+     *  read as bytes. */
+    private static String runBytes(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(navalMachine(),
+                 new ByteArrayInputStream(
+                     input.getBytes(StandardCharsets.UTF_8)),
+                 new PrintStream(out)).process();
+        return out.toString();
+    }
+
+    /** A settings line for the naval machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLineEndings() {
+        String nl = System.lineSeparator();
+        String expected = "QVPQS OKOIL PUBKJ" + nl + "ZPISF XDW" + nl;
+        for (String end : new String[] { "\n", "\r\n", "\r" }) {
+            assertEquals(expected,
+                         runBytes(SETTINGS + end + "FROM HIS SHOULDER"
+                                  + end + "HIAWATHA" + end));
+        }
+    }
+
+    @Test
+    public void testManyBlocks() {
+        int blocks = 100000;
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < blocks; k += 1) {
+            input.append(SETTINGS).append('\n');
+            input.append("FROM HIS SHOULDER HIAWATHA\n");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(new Scanner(NAVAL_CONFIG), new Scanner(input.toString()),
+                 new PrintStream(out)).process();
+        String[] lines = out.toString().split("\\R");
+        assertEquals(blocks, lines.length);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", lines[0]);
+        assertEquals(lines[0], lines[blocks - 1]);
+    }
+}
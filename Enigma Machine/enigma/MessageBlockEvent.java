@@ -0,0 +1,37 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight recorder event covering one message block: a settings line and
+ *  the message lines converted under it.  Disabled unless turned on in
+ *  the recording settings (e.g. enigma.MessageBlock#enabled=true).
+ *  @author MS
+ */
+@Name("enigma.MessageBlock")
+@Label("Message Block")
+@Category("Enigma")
+@Description("A settings line and the messages converted under it")
+@Enabled(false)
+class MessageBlockEvent extends Event {
+
+    /** Index of the block in its input, from 0. */
+    @Label("Block")
+    long block;
+
+    /** Names of the inserted rotors, reflector first. */
+    @Label("Rotor Order")
+    String rotorOrder;
+
+    /** Number of message lines. */
+    @Label("Messages")
+    int messages;
+
+    /** Number of characters converted. */
+    @Label("Length")
+    long chars;
+}
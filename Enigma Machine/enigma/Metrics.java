@@ -0,0 +1,310 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Process-wide performance counters and latency histograms for the
+ *  enigma package.  Recording is off until enable() is called; while
+ *  off, instrumented code pays only a test of enabled().  Counters are
+ *  striped (LongAdder), so recording from several threads does not
+ *  contend.  Message lines, which are too frequent to pay even that,
+ *  are recorded through a Recorder per thread, which batches counts
+ *  and times only a sample of the lines.
+ *  @author MS
+ */
+final class Metrics implements MetricsMBean {
+
+    /** The JMX name under which the metrics are registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Return the single instance. */
+    static Metrics get() {
+        return INSTANCE;
+    }
+
+    /** Return true iff metrics are being recorded. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Start recording metrics and publish them over JMX. */
+    static void enable() {
+        if (!_enabled) {
+            INSTANCE.reset();
+            _enabled = true;
+            try {
+                MBeanServer server =
+                    ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(INSTANCE, name);
+                }
+            } catch (JMException excp) {
+                throw error("could not register metrics: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Return a new Recorder for use by one thread, or null if metrics
+     *  are not being recorded. */
+    static Recorder recorder() {
+        return _enabled ? new Recorder() : null;
+    }
+
+    /** Record a converted message of CHARS characters that spent NANOS
+     *  nanoseconds in Machine.convert. */
+    void recordConvert(int chars, long nanos) {
+        _chars.add(chars);
+        _convertLatency.record(nanos);
+    }
+
+    /** Record a message line processed by Main in NANOS nanoseconds. */
+    void recordMessage(long nanos) {
+        _messages.increment();
+        _messageLatency.record(nanos);
+    }
+
+    /** Record a settings line parsed and applied in NANOS nanoseconds. */
+    void recordSettings(long nanos) {
+        _settingsLines.increment();
+        _settingsLatency.record(nanos);
+    }
+
+    /** Record a configuration loaded in NANOS nanoseconds. */
+    void recordConfig(long nanos) {
+        _configLatency.record(nanos);
+    }
+
+    /** Record a raised EnigmaException. */
+    void recordError() {
+        _errors.increment();
+    }
+
+    /** Write getSnapshot() to FILE every PERIODMILLIS milliseconds from a
+     *  daemon thread, replacing its previous contents each time. */
+    synchronized void startSnapshots(File file, long periodMillis) {
+        stopSnapshots();
+        _snapshotFile = file;
+        _snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "enigma-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        _snapshots.scheduleAtFixedRate(this::writeSnapshot, periodMillis,
+                                       periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stop periodic snapshots, if any, writing one final snapshot once
+     *  any periodic one in progress, which shares its temporary file,
+     *  has finished. */
+    synchronized void stopSnapshots() {
+        if (_snapshots != null) {
+            _snapshots.shutdown();
+            try {
+                _snapshots.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _snapshots = null;
+            writeSnapshot();
+        }
+    }
+
+    /** Write getSnapshot() to the snapshot file, via a temporary file so
+     *  that readers never see a partial snapshot. */
+    private void writeSnapshot() {
+        File file = _snapshotFile;
+        try {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (PrintStream out = new PrintStream(tmp)) {
+                out.print(getSnapshot());
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            System.err.printf("Warning: could not write %s%n", file);
+        }
+    }
+
+    @Override
+    public long getCharsConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSettingsLines() {
+        return _settingsLines.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return _errors.sum();
+    }
+
+    @Override
+    public double getCharsPerSecond() {
+        long nanos = System.nanoTime() - _start;
+        return nanos <= 0 ? 0.0 : getCharsConverted() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getMessageLatencyP50() {
+        return _messageLatency.percentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getMessageLatencyP99() {
+        return _messageLatency.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getMessageLatencyMax() {
+        return _messageLatency.max() / 1e3;
+    }
+
+    @Override
+    public double getConvertLatencyP50() {
+        return _convertLatency.percentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getConvertLatencyP99() {
+        return _convertLatency.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getSettingsLatencyP50() {
+        return _settingsLatency.percentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getSettingsLatencyP99() {
+        return _settingsLatency.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getConfigLoadMax() {
+        return _configLatency.max() / 1e3;
+    }
+
+    @Override
+    public String getSnapshot() {
+        return String.format("chars: %d (%.0f/s)%nmessages: %d%n"
+                             + "settings lines: %d%nerrors: %d%n"
+                             + "message latency: %s%n"
+                             + "convert latency: %s%n"
+                             + "settings latency: %s%n"
+                             + "config load: %s%n",
+                             getCharsConverted(), getCharsPerSecond(),
+                             getMessages(), getSettingsLines(), getErrors(),
+                             _messageLatency, _convertLatency,
+                             _settingsLatency, _configLatency);
+    }
+
+    @Override
+    public void reset() {
+        _chars.reset();
+        _messages.reset();
+        _settingsLines.reset();
+        _errors.reset();
+        _messageLatency.reset();
+        _convertLatency.reset();
+        _settingsLatency.reset();
+        _configLatency.reset();
+        _start = System.nanoTime();
+    }
+
+    /** Records the message lines processed by one thread.  Counts are
+     *  added to the shared counters every FLUSH_LINES lines and by
+     *  flush(), and only one line in SAMPLE_LINES is timed, so that the
+     *  latency histograms hold a sample of the lines. */
+    static final class Recorder {
+        /** Return true iff the next message line is to be timed. */
+        boolean sampling() {
+            return (_lines & (SAMPLE_LINES - 1)) == 0;
+        }
+
+        /** Record a message line converted to CHARS characters. */
+        void message(int chars) {
+            _chars += chars;
+            _lines += 1;
+            if (_lines == FLUSH_LINES) {
+                flush();
+            }
+        }
+
+        /** Record the times of a sampled message line that started at
+         *  START, left Machine.convert at CONVERTED and ended at END,
+         *  as given by System.nanoTime(). */
+        void timing(long start, long converted, long end) {
+            INSTANCE._convertLatency.record(converted - start);
+            INSTANCE._messageLatency.record(end - start);
+        }
+
+        /** Add the counts not yet added to the shared counters. */
+        void flush() {
+            INSTANCE._chars.add(_chars);
+            INSTANCE._messages.add(_lines);
+            _chars = 0;
+            _lines = 0;
+        }
+
+        /** Characters converted since the last flush. */
+        private long _chars;
+
+        /** Message lines since the last flush. */
+        private int _lines;
+    }
+
+    /** One message line in SAMPLE_LINES is timed (a power of 2). */
+    static final int SAMPLE_LINES = 64;
+
+    /** A Recorder flushes its counts every FLUSH_LINES message lines (a
+     *  multiple of SAMPLE_LINES). */
+    static final int FLUSH_LINES = 64 * SAMPLE_LINES;
+
+    /** The single instance. */
+    private static final Metrics INSTANCE = new Metrics();
+
+    /** True iff metrics are being recorded. */
+    private static volatile boolean _enabled;
+
+    /** Event counters. */
+    private final LongAdder _chars = new LongAdder(),
+        _messages = new LongAdder(), _settingsLines = new LongAdder(),
+        _errors = new LongAdder();
+
+    /** Latency histograms. */
+    private final LatencyHistogram _messageLatency = new LatencyHistogram(),
+        _convertLatency = new LatencyHistogram(),
+        _settingsLatency = new LatencyHistogram(),
+        _configLatency = new LatencyHistogram();
+
+    /** Time at which recording started or was last reset. */
+    private volatile long _start = System.nanoTime();
+
+    /** Destination of periodic snapshots. */
+    private File _snapshotFile;
+
+    /** Runs periodic snapshots, or null if there are none. */
+    private ScheduledExecutorService _snapshots;
+}
@@ -0,0 +1,56 @@
+package enigma;
+
+/** The management interface through which Metrics is published over
+ *  JMX.  Durations are in microseconds.
+ *  @author MS
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharsConverted();
+
+    /** Return the number of message lines processed. */
+    long getMessages();
+
+    /** Return the number of settings lines applied. */
+    long getSettingsLines();
+
+    /** Return the number of EnigmaExceptions raised. */
+    long getErrors();
+
+    /** Return characters converted per second of wall-clock time since
+     *  metrics were enabled or last reset. */
+    double getCharsPerSecond();
+
+    /** Return the median time to process one message line. */
+    double getMessageLatencyP50();
+
+    /** Return the 99th percentile time to process one message line. */
+    double getMessageLatencyP99();
+
+    /** Return the longest time to process one message line. */
+    double getMessageLatencyMax();
+
+    /** Return the median time spent in Machine.convert per message. */
+    double getConvertLatencyP50();
+
+    /** Return the 99th percentile time spent in Machine.convert per
+     *  message. */
+    double getConvertLatencyP99();
+
+    /** Return the median time to parse and apply a settings line. */
+    double getSettingsLatencyP50();
+
+    /** Return the 99th percentile time to parse and apply a settings
+     *  line. */
+    double getSettingsLatencyP99();
+
+    /** Return the longest time taken to load a configuration. */
+    double getConfigLoadMax();
+
+    /** Return a multi-line text summary of all metrics. */
+    String getSnapshot();
+
+    /** Reset all counters and histograms. */
+    void reset();
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author MS
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Start each test with recording on and nothing recorded. */
+    @Before
+    public void enable() {
+        Metrics.enable();
+        Metrics.get().reset();
+    }
+
+    /** Return the value of the published metrics attribute NAME. */
+    private Object attribute(String name) throws JMException {
+        return SERVER.getAttribute(new ObjectName(Metrics.OBJECT_NAME),
+                                   name);
+    }
+
+    /** Return the contents of FILE, or null if it does not exist. */
+    private String contents(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** The line separator used in snapshots. */
+    private static final String NL = System.lineSeparator();
+
+    /** The platform MBean server, with which Metrics registers. */
+    private static final MBeanServer SERVER =
+        ManagementFactory.getPlatformMBeanServer();
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRegistered() throws JMException {
+        assertTrue(Metrics.enabled());
+        assertTrue(SERVER.isRegistered(new ObjectName(Metrics.OBJECT_NAME)));
+        Metrics.enable();
+        assertEquals(0L, attribute("Messages"));
+        assertEquals(0L, attribute("Errors"));
+    }
+
+    @Test
+    public void testCountsFromMain() throws JMException {
+        String input = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS SHOULDER\nHIAWATHA\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(navalMachine(),
+                 new ByteArrayInputStream(input.getBytes(
+                     StandardCharsets.US_ASCII)),
+                 new PrintStream(out)).process();
+        assertEquals(2L, attribute("Messages"));
+        assertEquals(1L, attribute("SettingsLines"));
+        assertEquals(23L, attribute("CharsConverted"));
+        assertTrue((Double) attribute("MessageLatencyMax") > 0);
+        try {
+            new Main(navalMachine(),
+                     new ByteArrayInputStream("HELLO\n".getBytes(
+                         StandardCharsets.US_ASCII)),
+                     new PrintStream(out)).process();
+            fail("missing settings line accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(1L, attribute("Errors"));
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws JMException {
+        Metrics metrics = Metrics.get();
+        for (int k = 0; k < 98; k += 1) {
+            metrics.recordMessage(1000);
+        }
+        metrics.recordMessage(1_000_000);
+        metrics.recordMessage(1_000_000);
+        assertEquals(100L, attribute("Messages"));
+        assertEquals(1.0, (Double) attribute("MessageLatencyP50"), 1.0 / 16);
+        assertEquals(1000.0, (Double) attribute("MessageLatencyP99"), 1e-9);
+        assertEquals(1000.0, (Double) attribute("MessageLatencyMax"), 1e-9);
+        metrics.recordSettings(2000);
+        assertEquals(2.0, (Double) attribute("SettingsLatencyP50"), 2.0 / 16);
+    }
+
+    @Test
+    public void testRecorder() throws JMException {
+        Metrics.Recorder recorder = Metrics.recorder();
+        int lines = Metrics.FLUSH_LINES + 10, sampled = 0;
+        for (int k = 0; k < lines; k += 1) {
+            if (recorder.sampling()) {
+                sampled += 1;
+                recorder.timing(1000, 1500, 3000);
+            }
+            recorder.message(3);
+        }
+        assertEquals(Metrics.FLUSH_LINES / Metrics.SAMPLE_LINES + 1, sampled);
+        assertEquals((long) Metrics.FLUSH_LINES, attribute("Messages"));
+        assertEquals(3L * Metrics.FLUSH_LINES, attribute("CharsConverted"));
+        recorder.flush();
+        assertEquals((long) lines, attribute("Messages"));
+        assertEquals(3L * lines, attribute("CharsConverted"));
+        assertEquals(0.5, (Double) attribute("ConvertLatencyP50"), 0.5 / 16);
+        assertEquals(2.0, (Double) attribute("MessageLatencyP50"), 2.0 / 16);
+    }
+
+    @Test
+    public void testReset() throws JMException {
+        Metrics metrics = Metrics.get();
+        metrics.recordConvert(10, 500);
+        metrics.recordMessage(500);
+        metrics.recordError();
+        assertEquals(10L, attribute("CharsConverted"));
+        SERVER.invoke(new ObjectName(Metrics.OBJECT_NAME), "reset", null,
+                      null);
+        assertEquals(0L, attribute("CharsConverted"));
+        assertEquals(0L, attribute("Messages"));
+        assertEquals(0L, attribute("Errors"));
+        assertEquals(0.0, (Double) attribute("MessageLatencyMax"), 0.0);
+    }
+
+    @Test
+    public void testSnapshots() throws IOException, InterruptedException {
+        File file = File.createTempFile("metrics", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        Metrics metrics = Metrics.get();
+        metrics.recordMessage(1000);
+        metrics.startSnapshots(file, 10);
+        try {
+            String text = contents(file);
+            while (text == null || !text.contains("messages: 1" + NL)) {
+                Thread.sleep(10);
+                text = contents(file);
+            }
+            assertTrue(text, text.startsWith("chars: 0 "));
+            metrics.recordMessage(1000);
+        } finally {
+            metrics.stopSnapshots();
+        }
+        String text = contents(file);
+        assertTrue(text, text.contains("messages: 2" + NL));
+        assertEquals(metrics.getSnapshot(), text);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
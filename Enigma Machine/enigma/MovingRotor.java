@@ -3,7 +3,7 @@ package enigma;
 /** Class that represents a rotating rotor in the enigma machine.
  *  @author PNH, MS
  */
-class MovingRotor extends Rotor {
+final class MovingRotor extends Rotor {
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
@@ -13,11 +13,25 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches.toCharArray();
+        _atNotch = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); ) {
+            int ch = notches.codePointAt(i);
+            int k = perm.alphabet().indexOf(ch);
+            if (k >= 0) {
+                _atNotch[k] = true;
+            }
+            i += Character.charCount(ch);
+        }
         this.set(0);
     }
 
 
 
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), new String(_notches));
+    }
+
     boolean rotates() {
         return true;
     }
@@ -29,13 +43,12 @@ class MovingRotor extends Rotor {
 
 
     boolean atNotch() {
-        char setting = alphabet().toChar(this.setting());
-        for (int i = 0; i < _notches.length; i++) {
-            if (setting == _notches[i]) {
-                return true;
-            }
-        }
-        return false;
+        return _atNotch[setting()];
+    }
+
+    @Override
+    boolean notchAt(int posn) {
+        return _atNotch[posn];
     }
 
     @Override
@@ -45,4 +58,7 @@ class MovingRotor extends Rotor {
 
     /** Char array of notches of this rotor.*/
     private char[] _notches;
+
+    /** True at the index of each setting that is a notch. */
+    private boolean[] _atNotch;
 }
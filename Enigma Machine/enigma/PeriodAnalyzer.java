@@ -0,0 +1,400 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Computes how the rotor positions of a machine evolve as it converts:
+ *  the sequence of positions from given start positions is eventually
+ *  periodic, and the analyzer finds its exact transient length (the
+ *  number of steps before the first position that recurs) and period,
+ *  without stepping through them.  Each step advances the fast rotor,
+ *  and a rotating rotor also advances if the rotating rotor to its
+ *  right is at a notch, or if it is at a notch itself and the rotor to
+ *  its left rotates (double stepping).  Maximal runs of adjacent
+ *  rotating rotors thus move independently of each other, and within a
+ *  run, each rotor moves independently of those to its left.  The
+ *  motion of a run is built from its right end: the motion of the
+ *  rotors from some rotor rightward is described by its transient,
+ *  period and the steps at which that rotor is at a notch, and the next
+ *  rotor to the left only changes position at those steps (or, at its
+ *  own notches, at the next step).  So the position of that rotor after
+ *  each period of the rotors to its right is found from the notch steps
+ *  alone, and its positions after successive periods form a sequence of
+ *  at most one per letter before repeating, which gives the transient
+ *  and period of the longer run.  The work is proportional to the
+ *  number of notch steps involved, rather than to the period.
+ *  @author MS
+ */
+final class PeriodAnalyzer {
+
+    /** An analyzer for the rotors currently in MACHINE, after the
+     *  reflector. */
+    PeriodAnalyzer(Machine machine) {
+        _size = machine.alphabet().size();
+        int n = machine.numRotors() - 1;
+        _rotates = new boolean[n];
+        _notch = new boolean[n][_size];
+        for (int j = 0; j < n; j += 1) {
+            Rotor rotor = machine.getRotor(j + 1);
+            _rotates[j] = rotor.rotates();
+            for (int p = 0; p < _size; p += 1) {
+                _notch[j][p] = rotor.notchAt(p);
+            }
+        }
+    }
+
+    /** An analyzer for rotors over an alphabet of SIZE letters, the Jth
+     *  from the left (after the reflector) rotating iff ROTATES[J] and
+     *  having a notch at position P iff NOTCH[J][P]. */
+    PeriodAnalyzer(int size, boolean[] rotates, boolean[][] notch) {
+        _size = size;
+        _rotates = rotates.clone();
+        _notch = new boolean[rotates.length][];
+        for (int j = 0; j < rotates.length; j += 1) {
+            _notch[j] = notch[j].clone();
+        }
+    }
+
+    /** Advance the rotor POSITIONS, leftmost first, by one step. */
+    void step(int[] positions) {
+        int n = positions.length;
+        for (int j = 0; j < n; j += 1) {
+            boolean advance = j == n - 1
+                || _rotates[j] && j + 1 < n && _rotates[j + 1]
+                   && _notch[j + 1][positions[j + 1]]
+                || _rotates[j] && j > 0 && _rotates[j - 1]
+                   && _notch[j][positions[j]];
+            if (advance) {
+                positions[j] = (positions[j] + 1) % _size;
+            }
+        }
+    }
+
+    /** Advance POSITIONS, leftmost first, by STEPS steps.  Rather than
+     *  stepping, this finds the position of each rotor from the notch
+     *  steps of those to its right, skipping whole periods of its
+     *  motion. */
+    void advance(int[] positions, long steps) {
+        analyze(positions);
+        for (int j = 0; j < positions.length; j += 1) {
+            Motion motion = _motions[j];
+            long t = steps;
+            if (t > motion.start) {
+                t = motion.start + (t - motion.start) % motion.period;
+            }
+            if (_levels[j] == null) {
+                positions[j] = (int) ((positions[j] + t) % _size);
+            } else {
+                positions[j] = _levels[j].simulate(positions[j], 0, t, null);
+            }
+        }
+    }
+
+    /** Compute the transient length and period of the positions from
+     *  start positions POSITIONS, leftmost first. */
+    void analyze(int[] positions) {
+        int n = positions.length;
+        _motions = new Motion[n];
+        _levels = new Level[n];
+        long transientLength = 0, period = 1;
+        for (int b = n - 1; b >= 0; ) {
+            int a = b;
+            while (_rotates[b] && a > 0 && _rotates[a - 1]) {
+                a -= 1;
+            }
+            Motion motion = runMotion(positions, a, b);
+            transientLength = Math.max(transientLength, motion.start);
+            period = lcm(period, motion.period);
+            b = a - 1;
+        }
+        _transient = transientLength;
+        _period = period;
+    }
+
+    /** Return the transient length found by the last analyze. */
+    long transientLength() {
+        return _transient;
+    }
+
+    /** Return the period found by the last analyze. */
+    long period() {
+        return _period;
+    }
+
+    /** Return the motion of rotors A .. B from POSITIONS, where either
+     *  A = B or they are a maximal run of rotating rotors. */
+    private Motion runMotion(int[] positions, int a, int b) {
+        int last = positions.length - 1;
+        Motion motion;
+        if (b == last || a < b && allNotches(b)) {
+            motion = new Motion(0, _size);
+            if (a < b) {
+                for (int t = 0; t < _size; t += 1) {
+                    if (_notch[b][(positions[b] + t) % _size]) {
+                        motion.cycle.add(t);
+                    }
+                }
+            }
+        } else {
+            Level level = new Level(b, a < b, null);
+            motion = new Motion(0, 1);
+            level.simulate(positions[b], 0, NEVER, motion.prefix);
+            motion.start = level.lastStep;
+            _levels[b] = level;
+        }
+        _motions[b] = motion;
+        for (int q = b - 1; q >= a; q -= 1) {
+            _levels[q] = new Level(q, q > a, motion);
+            motion = _levels[q].motion(positions[q]);
+            _motions[q] = motion;
+        }
+        return motion;
+    }
+
+    /** Return true iff every position of rotor J is a notch. */
+    private boolean allNotches(int j) {
+        for (boolean notch : _notch[j]) {
+            if (!notch) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the least common multiple of A and B, both positive. */
+    private static long lcm(long a, long b) {
+        long x = a, y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        try {
+            return Math.multiplyExact(a / x, b);
+        } catch (ArithmeticException excp) {
+            throw error("rotor period is too large");
+        }
+    }
+
+    /** The motion of the rotors from some rotor rightward: their
+     *  positions repeat with period PERIOD from step START on, and that
+     *  rotor is at a notch at the steps in PREFIX (all before START) and
+     *  at START + K * PERIOD + T for each T in CYCLE and K >= 0. */
+    private static class Motion {
+        /** A motion starting its cycle at START with period PERIOD. */
+        Motion(long start, long period) {
+            this.start = start;
+            this.period = period;
+        }
+
+        /** Return the first step at or after T at which my rotor is at a
+         *  notch, or NEVER. */
+        long nextNotch(long t) {
+            if (t < start) {
+                int k = prefix.search(t);
+                if (k < prefix.size()) {
+                    return prefix.get(k);
+                }
+                t = start;
+            }
+            if (cycle.size() == 0) {
+                return NEVER;
+            }
+            long periods = (t - start) / period;
+            int k = cycle.search((t - start) % period);
+            if (k == cycle.size()) {
+                periods += 1;
+                k = 0;
+            }
+            return start + periods * period + cycle.get(k);
+        }
+
+        /** Transient length and period. */
+        private long start, period;
+
+        /** Notch steps. */
+        private final Steps prefix = new Steps(), cycle = new Steps();
+    }
+
+    /** One rotor, moving as driven by the motion of those to its
+     *  right. */
+    private class Level {
+        /** Rotor J, which double steps iff DOUBLES, driven by the notches
+         *  of DRIVER, or by nothing if DRIVER is null. */
+        Level(int j, boolean doubles, Motion driver) {
+            _j = j;
+            _doubles = doubles;
+            _driver = driver;
+        }
+
+        /** Return the step at or after T at which my rotor advances from
+         *  position POS, or NEVER. */
+        long nextStep(int pos, long t) {
+            if (_doubles && _notch[_j][pos]) {
+                return t;
+            }
+            return _driver == null ? NEVER : _driver.nextNotch(t);
+        }
+
+        /** Return the position at step END of my rotor, at position POS
+         *  at step START, adding the steps at which it is at a notch to
+         *  NOTCHES unless that is null.  Set lastStep to the step after
+         *  the last advance, or START if there are none. */
+        int simulate(int pos, long start, long end, Steps notches) {
+            lastStep = start;
+            long t = start;
+            while (true) {
+                long s = nextStep(pos, t);
+                if (s >= end) {
+                    return pos;
+                }
+                if (notches != null && _notch[_j][pos]) {
+                    notches.add(s);
+                }
+                pos = (pos + 1) % _size;
+                t = s + 1;
+                lastStep = t;
+            }
+        }
+
+        /** Return the first step at or after START at which my rotor is in
+         *  the same position starting from positions P1 and P2 at START,
+         *  which must happen within a period of my driver. */
+        long meet(int p1, int p2, long start) {
+            long t = start;
+            while (p1 != p2) {
+                long s1 = nextStep(p1, t), s2 = nextStep(p2, t);
+                long s = Math.min(s1, s2);
+                if (s == NEVER) {
+                    throw error("rotor motion analysis failed");
+                }
+                if (s1 == s) {
+                    p1 = (p1 + 1) % _size;
+                }
+                if (s2 == s) {
+                    p2 = (p2 + 1) % _size;
+                }
+                t = s + 1;
+            }
+            return t;
+        }
+
+        /** Return the motion of my rotor and those to its right, from
+         *  position POS of my rotor. */
+        Motion motion(int pos) {
+            long t0 = _driver.start, p0 = _driver.period;
+            try {
+                Math.addExact(t0, Math.multiplyExact(p0, _size + 2));
+            } catch (ArithmeticException excp) {
+                throw error("rotor period is too large");
+            }
+            int[] seen = new int[_size], after = new int[_size + 1];
+            Arrays.fill(seen, -1);
+            int y = simulate(pos, 0, t0, null);
+            int k = 0;
+            while (seen[y] < 0) {
+                seen[y] = k;
+                after[k] = y;
+                long from = t0 + k * p0;
+                y = simulate(y, from, from + p0, null);
+                k += 1;
+            }
+            int tail = seen[y], cycles = k - tail;
+            long start = t0;
+            if (tail > 0) {
+                start = meet(after[tail - 1], after[tail - 1 + cycles],
+                             t0 + (tail - 1) * p0);
+            }
+            Motion result = new Motion(start, cycles * p0);
+            if (_doubles) {
+                int p = simulate(pos, 0, start, result.prefix);
+                simulate(p, start, start + result.period, result.cycle);
+                result.cycle.shift(-start);
+            }
+            return result;
+        }
+
+        /** Step after the last advance seen by simulate. */
+        private long lastStep;
+
+        /** Index of my rotor. */
+        private final int _j;
+
+        /** True iff my rotor double steps. */
+        private final boolean _doubles;
+
+        /** Motion of the rotors to my right, or null. */
+        private final Motion _driver;
+    }
+
+    /** A growing, increasing sequence of steps. */
+    private static class Steps {
+        /** Add T, which exceeds all my steps. */
+        void add(long t) {
+            if (_size == _steps.length) {
+                if (_size >= MAX_STEPS) {
+                    throw error("rotor motion too complex to analyze");
+                }
+                _steps = Arrays.copyOf(_steps, 2 * _size);
+            }
+            _steps[_size] = t;
+            _size += 1;
+        }
+
+        /** Return my Kth step. */
+        long get(int k) {
+            return _steps[k];
+        }
+
+        /** Return my number of steps. */
+        int size() {
+            return _size;
+        }
+
+        /** Return the index of my first step at or after T, or size(). */
+        int search(long t) {
+            int k = Arrays.binarySearch(_steps, 0, _size, t);
+            return k >= 0 ? k : -k - 1;
+        }
+
+        /** Add D to all my steps. */
+        void shift(long d) {
+            for (int k = 0; k < _size; k += 1) {
+                _steps[k] += d;
+            }
+        }
+
+        /** Steps, in _steps[0 .. _size-1]. */
+        private long[] _steps = new long[INITIAL_STEPS];
+
+        /** Number of steps. */
+        private int _size;
+    }
+
+    /** A step that never comes. */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /** Initial and largest number of notch steps recorded per rotor. */
+    private static final int INITIAL_STEPS = 16, MAX_STEPS = 1 << 26;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** True for each rotor, leftmost first, that rotates. */
+    private final boolean[] _rotates;
+
+    /** For each rotor, whether each position is a notch. */
+    private final boolean[][] _notch;
+
+    /** Results of the last analyze. */
+    private long _transient, _period;
+
+    /** For each rotor, as of the last analyze, the motion of it and those
+     *  to its right. */
+    private Motion[] _motions;
+
+    /** For each rotor, as of the last analyze, its motion as driven by
+     *  those to its right, or null if it advances at every step. */
+    private Level[] _levels;
+}
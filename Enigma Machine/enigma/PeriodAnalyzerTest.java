@@ -0,0 +1,132 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PeriodAnalyzer class.
+ *  @author MS
+ */
+public class PeriodAnalyzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return {transient length, period} of the positions of ANALYZER's
+     *  rotors from POSITIONS, found by stepping. */
+    private static long[] bruteForce(PeriodAnalyzer analyzer,
+                                     int[] positions) {
+        Map<String, Long> seen = new HashMap<>();
+        int[] p = positions.clone();
+        for (long t = 0; ; t += 1) {
+            Long first = seen.put(Arrays.toString(p), t);
+            if (first != null) {
+                return new long[] { first, t - first };
+            }
+            analyzer.step(p);
+        }
+    }
+
+    /** A configuration with some naval rotors. */
+    private static final String CONFIG =
+        navalConfig("I", "II", "III", "Beta", "B");
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(17);
+        for (int trial = 0; trial < 300; trial += 1) {
+            int size = 2 + random.nextInt(6), n = 1 + random.nextInt(4);
+            boolean[] rotates = new boolean[n];
+            boolean[][] notch = new boolean[n][size];
+            int[] positions = new int[n];
+            for (int j = 0; j < n; j += 1) {
+                rotates[j] = random.nextInt(4) != 0;
+                int density = random.nextInt(5);
+                for (int p = 0; p < size; p += 1) {
+                    notch[j][p] = rotates[j] && random.nextInt(4) < density;
+                }
+                positions[j] = random.nextInt(size);
+            }
+            PeriodAnalyzer analyzer =
+                new PeriodAnalyzer(size, rotates, notch);
+            analyzer.analyze(positions);
+            long[] expected = bruteForce(analyzer, positions);
+            String msg = msg("trial " + trial, "size %d rotates %s notches "
+                             + "%s from %s", size, Arrays.toString(rotates),
+                             Arrays.deepToString(notch),
+                             Arrays.toString(positions));
+            assertEquals(msg, expected[0], analyzer.transientLength());
+            assertEquals(msg, expected[1], analyzer.period());
+            long steps = random.nextInt(3 * (int) (expected[0] + expected[1]));
+            int[] stepped = positions.clone(), advanced = positions.clone();
+            for (long t = 0; t < steps; t += 1) {
+                analyzer.step(stepped);
+            }
+            analyzer.advance(advanced, steps);
+            assertArrayEquals(msg, stepped, advanced);
+        }
+    }
+
+    @Test
+    public void testNavalPeriod() {
+        Machine m = Main.configure(new Scanner(CONFIG));
+        m.insertRotors(new String[] { "B", "Beta", "III", "II", "I" });
+        m.setRotors("AAAA");
+        PeriodAnalyzer analyzer = new PeriodAnalyzer(m);
+        analyzer.analyze(m.positions());
+        assertEquals(26 * 25 * 26, analyzer.period());
+        long[] expected = bruteForce(analyzer, m.positions());
+        assertEquals(expected[0], analyzer.transientLength());
+        m.setRotors("AADQ");
+        analyzer.analyze(m.positions());
+        assertEquals(bruteForce(analyzer, m.positions())[0],
+                     analyzer.transientLength());
+    }
+
+    @Test
+    public void testStepMatchesMachine() {
+        Machine m = Main.configure(new Scanner(CONFIG));
+        m.insertRotors(new String[] { "B", "Beta", "III", "II", "I" });
+        m.setRotors("AADO");
+        PeriodAnalyzer analyzer = new PeriodAnalyzer(m);
+        int[] positions = m.positions();
+        for (int k = 0; k < 2000; k += 1) {
+            m.advance();
+            analyzer.step(positions);
+            assertArrayEquals(m.positions(), positions);
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        Machine m = Main.configure(new Scanner(CONFIG));
+        m.insertRotors(new String[] { "B", "Beta", "III", "II", "I" });
+        m.setRotors("QDDO");
+        Machine stepped = m.copy();
+        stepped.insertRotors(new String[] { "B", "Beta", "III", "II", "I" });
+        stepped.setRotors("QDDO");
+        m.skip(3 * 26 * 25 * 26 + 123);
+        for (int k = 0; k < 123; k += 1) {
+            stepped.advance();
+        }
+        assertArrayEquals(stepped.positions(), m.positions());
+        m.skip(1L << 50);
+        PeriodAnalyzer analyzer = new PeriodAnalyzer(m);
+        int[] positions = stepped.positions();
+        analyzer.advance(positions, 1L << 50);
+        assertArrayEquals(positions, m.positions());
+    }
+}
@@ -1,7 +1,15 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The mapping is held in tables of
+ *  shorts when the alphabet is small enough, and of ints otherwise.  The
+ *  tables may instead be in a (typically memory-mapped) buffer, in which
+ *  case the permutation cannot be changed.
  *  @author PNH, MS
  */
 class Permutation {
@@ -13,28 +21,157 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycleSetUp(cycles);
+        int n = alphabet.size();
+        if (n <= SHORT_LIMIT) {
+            _shortForward = new short[n];
+            _shortInverse = new short[n];
+        } else {
+            _forward = new int[n];
+            _inverse = new int[n];
+        }
+        _mapped = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            set(i, i, i);
+        }
+        for (String cycle : cycleSetUp(cycles)) {
+            addCycle(cycle);
+        }
+    }
+
+    /** The permutation of the characters of ALPHABET taking each index K
+     *  to FORWARD[K] (see PermutationAlgebra).  FORWARD is copied, not
+     *  retained. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int n = alphabet.size();
+        if (forward.length != n
+            || !PermutationAlgebra.isPermutation(forward, new int[n])) {
+            throw error("not a permutation of %d characters", n);
+        }
+        if (n <= SHORT_LIMIT) {
+            _shortForward = new short[n];
+            _shortInverse = new short[n];
+        } else {
+            _forward = new int[n];
+            _inverse = new int[n];
+        }
+        _mapped = new boolean[n];
+        setMapping(forward);
+    }
 
+    /** A permutation of the characters of ALPHABET whose image and
+     *  inverse tables are at offsets FORWARD and INVERSE of TABLES, with
+     *  entries of two bytes if ALPHABET has at most SHORT_LIMIT
+     *  characters, and four otherwise.  TABLES is read with absolute
+     *  gets only, so it may be shared. */
+    Permutation(Alphabet alphabet, ByteBuffer tables, int forward,
+                int inverse) {
+        _alphabet = alphabet;
+        _shared = tables;
+        _sharedForward = forward;
+        _sharedInverse = inverse;
+        _sharedWidth = alphabet.size() <= SHORT_LIMIT ? 2 : 4;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  Characters already in an earlier cycle keep their
+     *  earlier mapping. */
     void addCycle(String cycle) {
-        String[] update = new String[_cycles.length + 1];
-        for (int i = 0; i < update.length; i++) {
-            if (i == (update.length - 1)) {
-                update[i] = cycleSetUp(cycle)[0];
+        checkWritable();
+        int[] chars = cycle.replaceAll("[()\\s]", "").codePoints()
+            .toArray();
+        int n = chars.length;
+        for (int j = 0; j < n; j += 1) {
+            int c = _alphabet.toInt(chars[j]);
+            if (!_mapped[c]) {
+                _mapped[c] = true;
+                set(c, _alphabet.toInt(chars[(j + 1) % n]),
+                    _alphabet.toInt(chars[(j + n - 1) % n]));
+            }
+        }
+    }
+
+    /** Set this permutation to the one taking each K to FORWARD[K], for
+     *  0 <= K < size().  FORWARD must be a permutation of 0..size()-1; it
+     *  is copied, not retained. */
+    void setMapping(int[] forward) {
+        checkWritable();
+        for (int k = 0; k < forward.length; k += 1) {
+            _mapped[k] = true;
+            if (_forward != null) {
+                _forward[k] = forward[k];
+                _inverse[forward[k]] = k;
             } else {
-                update[i] = _cycles[i];
+                _shortForward[k] = (short) forward[k];
+                _shortInverse[forward[k]] = (short) k;
+            }
+        }
+    }
+
+    /** Store my image of each index K in OUT[K], for 0 <= K < size(), as
+     *  for PermutationAlgebra. */
+    void forwardInto(int[] out) {
+        tableInto(_shortForward, _forward, _sharedForward, out);
+    }
+
+    /** Store the image of each index K under my inverse in OUT[K], for
+     *  0 <= K < size(). */
+    void inverseInto(int[] out) {
+        tableInto(_shortInverse, _inverse, _sharedInverse, out);
+    }
+
+    /** Copy into OUT whichever of SHORTS, INTS and the shared table at
+     *  offset SHARED holds one of my tables. */
+    private void tableInto(short[] shorts, int[] ints, int shared,
+                           int[] out) {
+        int n = size();
+        if (shorts != null) {
+            for (int k = 0; k < n; k += 1) {
+                out[k] = shorts[k];
+            }
+        } else if (ints != null) {
+            System.arraycopy(ints, 0, out, 0, n);
+        } else {
+            for (int k = 0; k < n; k += 1) {
+                out[k] = sharedEntry(shared, k);
             }
         }
-        _cycles = update;
+    }
+
+    /** Report an error if my tables are shared. */
+    private void checkWritable() {
+        if (_shared != null) {
+            throw error("shared rotor tables cannot be changed");
+        }
+    }
+
+    /** Record that K maps to TO and is mapped to from FROM. */
+    private void set(int k, int to, int from) {
+        if (_forward != null) {
+            _forward[k] = to;
+            _inverse[k] = from;
+        } else {
+            _shortForward[k] = (short) to;
+            _shortInverse[k] = (short) from;
+        }
     }
 
     /** Return the cycles of this permutation.
      * @param p is this permutation.*/
     public String[] getCycles(Permutation p) {
-        return p._cycles;
+        ArrayList<String> result = new ArrayList<>();
+        boolean[] done = new boolean[p.size()];
+        for (int k = 0; k < p.size(); k += 1) {
+            if (!done[k]) {
+                StringBuilder cycle = new StringBuilder();
+                for (int c = k; !done[c]; c = p.permute(c)) {
+                    done[c] = true;
+                    cycle.appendCodePoint(p._alphabet.toCodePoint(c));
+                }
+                result.add(cycle.toString());
+            }
+        }
+        return result.toArray(new String[result.size()]);
     }
 
     /** Set up the cycles into an Array of type String.
@@ -42,11 +179,11 @@ class Permutation {
      *  @return a cycle set up as an array of strings.*/
     private String[] cycleSetUp(String cycle) {
 
-        cycle = cycle.replaceAll("\\)", "");
-        cycle = cycle.replaceAll("\\(", "");
+        cycle = cycle.replaceAll("\\)", " ");
+        cycle = cycle.replaceAll("\\(", " ");
         cycle = cycle.trim();
 
-        return cycle.split((" "));
+        return cycle.split("\\s+");
     }
 
 
@@ -70,46 +207,31 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char ch = alphabet().toChar(wrap(p));
-
-        char result = 0;
-        for (String cycle : _cycles) {
-            for (int j = 0; j < cycle.length(); j++) {
-                if (cycle.charAt(j) == ch) {
-
-                    int m = (j + 1) % cycle.length();
-
-                    result = cycle.charAt(m);
-                    return _alphabet.toInt(result);
-                }
-            }
+        if (_shortForward != null) {
+            return _shortForward[wrap(p)];
+        } else if (_forward != null) {
+            return _forward[wrap(p)];
         }
-        return wrap(p);
+        return sharedEntry(_sharedForward, wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char ch = alphabet().toChar(wrap(c));
-
-        char result = '0';
-        for (String cycle : _cycles) {
-            for (int j = 0; j < cycle.length(); j++) {
-                if (cycle.charAt(j) == ch) {
-
-                    int m = ((j - 1) % cycle.length());
-
-                    while (m < 0) {
-                        m += cycle.length();
-                    }
+        if (_shortInverse != null) {
+            return _shortInverse[wrap(c)];
+        } else if (_inverse != null) {
+            return _inverse[wrap(c)];
+        }
+        return sharedEntry(_sharedInverse, wrap(c));
+    }
 
-                    result = cycle.charAt(m);
-                    int s = _alphabet.toInt(result);
-                    return s;
-                }
-            }
+    /** Return entry K of the shared table at offset TABLE. */
+    private int sharedEntry(int table, int k) {
+        if (_sharedWidth == 2) {
+            return _shared.getShort(table + 2 * k);
         }
-        return c;
+        return _shared.getInt(table + 4 * k);
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -134,10 +256,43 @@ class Permutation {
         return _alphabet;
     }
 
+    /** Return true iff my tables are in a shared mapping rather than on
+     *  the heap. */
+    boolean shared() {
+        return _shared != null;
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Cycles of this permutation. */
-    private String[] _cycles;
+    /** Alphabets no larger than this use _shortForward and
+     *  _shortInverse; larger ones use _forward and _inverse. */
+    static final int SHORT_LIMIT = Short.MAX_VALUE + 1;
+
+    /** The image of each index under this permutation, for large
+     *  alphabets; otherwise null. */
+    private int[] _forward;
+
+    /** The image of each index under the inverse of this permutation, for
+     *  large alphabets; otherwise null. */
+    private int[] _inverse;
+
+    /** As for _forward, for small alphabets. */
+    private short[] _shortForward;
+
+    /** As for _inverse, for small alphabets. */
+    private short[] _shortInverse;
+
+    /** Buffer holding my tables when they are shared; otherwise null. */
+    private ByteBuffer _shared;
+
+    /** Offsets in _shared of my image and inverse tables. */
+    private int _sharedForward, _sharedInverse;
+
+    /** Bytes per entry of my shared tables. */
+    private int _sharedWidth;
+
+    /** True for each index already placed in a cycle. */
+    private boolean[] _mapped;
 
 }
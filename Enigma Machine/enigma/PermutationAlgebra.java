@@ -0,0 +1,176 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Operations on permutations of 0 .. N-1 held as int arrays, P taking
+ *  each K to P[K].  Results go into arrays supplied by the caller, and
+ *  any working space needed is a caller-supplied SCRATCH array of at
+ *  least N ints, so that no operation allocates.  No operation checks
+ *  that its arguments are permutations (see isPermutation), and unless
+ *  stated otherwise, an output array must not also be an input.
+ *  Permutation objects convert to and from this form with
+ *  Permutation.forwardInto and the Permutation(int[], Alphabet)
+ *  constructor.
+ *  @author MS
+ */
+final class PermutationAlgebra {
+
+    /** Not instantiable. */
+    private PermutationAlgebra() {
+    }
+
+    /** Set OUT to the identity permutation. */
+    static void identityInto(int[] out) {
+        for (int k = 0; k < out.length; k += 1) {
+            out[k] = k;
+        }
+    }
+
+    /** Set OUT to the permutation that applies FIRST and then SECOND,
+     *  taking each K to SECOND[FIRST[K]].  OUT may be FIRST. */
+    static void composeInto(int[] first, int[] second, int[] out) {
+        for (int k = 0; k < out.length; k += 1) {
+            out[k] = second[first[k]];
+        }
+    }
+
+    /** Set OUT to the inverse of P. */
+    static void inverseInto(int[] p, int[] out) {
+        for (int k = 0; k < p.length; k += 1) {
+            out[p[k]] = k;
+        }
+    }
+
+    /** Set OUT to P applied E times, where a negative E applies the
+     *  inverse of P -E times.  This takes time proportional to the size
+     *  of P, whatever E is.  SCRATCH is working space. */
+    static void powerInto(int[] p, long e, int[] out, int[] scratch) {
+        int n = p.length;
+        for (int k = 0; k < n; k += 1) {
+            out[k] = -1;
+        }
+        for (int k = 0; k < n; k += 1) {
+            if (out[k] >= 0) {
+                continue;
+            }
+            int len = 0;
+            for (int c = k; len == 0 || c != k; c = p[c]) {
+                scratch[len] = c;
+                len += 1;
+            }
+            int shift = (int) Math.floorMod(e, (long) len);
+            for (int i = 0; i < len; i += 1) {
+                int j = i + shift;
+                out[scratch[i]] = scratch[j < len ? j : j - len];
+            }
+        }
+    }
+
+    /** Store the cycles of P in ELEMENTS and STARTS and return their
+     *  number, C.  Cycle #I, for 0 <= I < C, is ELEMENTS[STARTS[I] ..
+     *  STARTS[I+1]-1], each element taken by P to the next, and the last
+     *  to the first.  Cycles appear in order of their smallest elements,
+     *  each starting with that element.  ELEMENTS must have room for the
+     *  size of P, and STARTS for one more.  SCRATCH is working space. */
+    static int cyclesInto(int[] p, int[] elements, int[] starts,
+                          int[] scratch) {
+        int n = p.length, cycles = 0, next = 0;
+        for (int k = 0; k < n; k += 1) {
+            scratch[k] = 0;
+        }
+        for (int k = 0; k < n; k += 1) {
+            if (scratch[k] != 0) {
+                continue;
+            }
+            starts[cycles] = next;
+            cycles += 1;
+            for (int c = k; scratch[c] == 0; c = p[c]) {
+                scratch[c] = 1;
+                elements[next] = c;
+                next += 1;
+            }
+        }
+        starts[cycles] = next;
+        return cycles;
+    }
+
+    /** Set COUNTS[L] to the number of cycles of length L in P, for
+     *  1 <= L <= the size of P (COUNTS[0] is set to 0), and return the
+     *  number of cycles.  COUNTS must have room for one more than the
+     *  size of P.  SCRATCH is working space. */
+    static int cycleTypeInto(int[] p, int[] counts, int[] scratch) {
+        int n = p.length, cycles = 0;
+        for (int len = 0; len <= n; len += 1) {
+            counts[len] = 0;
+        }
+        for (int k = 0; k < n; k += 1) {
+            scratch[k] = 0;
+        }
+        for (int k = 0; k < n; k += 1) {
+            if (scratch[k] != 0) {
+                continue;
+            }
+            int len = 0;
+            for (int c = k; scratch[c] == 0; c = p[c]) {
+                scratch[c] = 1;
+                len += 1;
+            }
+            counts[len] += 1;
+            cycles += 1;
+        }
+        return cycles;
+    }
+
+    /** Return the order of P: the least positive E such that P applied
+     *  E times is the identity.  It is an error if that does not fit in
+     *  a long.  SCRATCH is working space. */
+    static long order(int[] p, int[] scratch) {
+        int n = p.length;
+        for (int k = 0; k < n; k += 1) {
+            scratch[k] = 0;
+        }
+        long result = 1;
+        for (int k = 0; k < n; k += 1) {
+            if (scratch[k] != 0) {
+                continue;
+            }
+            int len = 0;
+            for (int c = k; scratch[c] == 0; c = p[c]) {
+                scratch[c] = 1;
+                len += 1;
+            }
+            try {
+                result = Math.multiplyExact(result / gcd(result, len), len);
+            } catch (ArithmeticException excp) {
+                throw error("permutation order is too large");
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff P is a permutation of 0 .. P.length-1.  SCRATCH
+     *  is working space. */
+    static boolean isPermutation(int[] p, int[] scratch) {
+        int n = p.length;
+        for (int k = 0; k < n; k += 1) {
+            scratch[k] = 0;
+        }
+        for (int k = 0; k < n; k += 1) {
+            if (p[k] < 0 || p[k] >= n || scratch[p[k]] != 0) {
+                return false;
+            }
+            scratch[p[k]] = 1;
+        }
+        return true;
+    }
+
+    /** Return the greatest common divisor of A and B, both positive. */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
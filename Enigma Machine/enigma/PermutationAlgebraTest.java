@@ -0,0 +1,129 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.PermutationAlgebra.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PermutationAlgebra class.
+ *  @author MS
+ */
+public class PermutationAlgebraTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random permutation of 0 .. N-1 from RANDOM. */
+    private int[] random(int n, Random random) {
+        int[] result = new int[n];
+        identityInto(result);
+        for (int k = n - 1; k > 0; k -= 1) {
+            int j = random.nextInt(k + 1), t = result[k];
+            result[k] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** (0 1 2)(3 4)(5) as an array. */
+    private static final int[] P = { 1, 2, 0, 4, 3, 5 };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testComposeAndInverse() {
+        int[] q = { 5, 4, 3, 2, 1, 0 }, out = new int[6];
+        composeInto(P, q, out);
+        assertArrayEquals(new int[] { 4, 3, 5, 1, 2, 0 }, out);
+        inverseInto(P, out);
+        assertArrayEquals(new int[] { 2, 0, 1, 4, 3, 5 }, out);
+        int[] id = new int[6];
+        composeInto(P, out, id);
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 }, id);
+        int[] first = P.clone();
+        composeInto(first, q, first);
+        assertArrayEquals(new int[] { 4, 3, 5, 1, 2, 0 }, first);
+    }
+
+    @Test
+    public void testPower() {
+        Random random = new Random(7);
+        int[] p = random(50, random), expected = new int[50],
+            out = new int[50], scratch = new int[50], inverse = new int[50];
+        identityInto(expected);
+        for (int e = 0; e < 100; e += 1) {
+            powerInto(p, e, out, scratch);
+            assertArrayEquals("power " + e, expected, out);
+            composeInto(expected, p, expected);
+        }
+        inverseInto(p, inverse);
+        powerInto(p, -1, out, scratch);
+        assertArrayEquals(inverse, out);
+        long order = order(p, scratch);
+        powerInto(p, order, out, scratch);
+        identityInto(expected);
+        assertArrayEquals(expected, out);
+        powerInto(p, 5 * order + 3, out, scratch);
+        powerInto(p, 3, expected, scratch);
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void testCycles() {
+        int[] elements = new int[6], starts = new int[7],
+            scratch = new int[6], counts = new int[7];
+        assertEquals(3, cyclesInto(P, elements, starts, scratch));
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 }, elements);
+        assertArrayEquals(new int[] { 0, 3, 5, 6 },
+                          Arrays.copyOf(starts, 4));
+        assertEquals(3, cycleTypeInto(P, counts, scratch));
+        assertArrayEquals(new int[] { 0, 1, 1, 1, 0, 0, 0 }, counts);
+        assertEquals(6, order(P, scratch));
+        int[] q = { 3, 0, 1, 2 };
+        assertEquals(1, cyclesInto(q, elements, starts, scratch));
+        assertArrayEquals(new int[] { 0, 3, 2, 1 },
+                          Arrays.copyOf(elements, 4));
+    }
+
+    @Test
+    public void testIsPermutation() {
+        int[] scratch = new int[3];
+        assertTrue(isPermutation(new int[] { 2, 0, 1 }, scratch));
+        assertFalse(isPermutation(new int[] { 2, 0, 2 }, scratch));
+        assertFalse(isPermutation(new int[] { 3, 0, 1 }, scratch));
+    }
+
+    @Test
+    public void testConversion() {
+        Alphabet az = new Alphabet(UPPER_STRING);
+        Permutation perm = new Permutation(NAVALA.get("I"), az);
+        int[] forward = new int[26], inverse = new int[26],
+            check = new int[26];
+        perm.forwardInto(forward);
+        perm.inverseInto(inverse);
+        for (int k = 0; k < 26; k += 1) {
+            assertEquals(perm.permute(k), forward[k]);
+            assertEquals(perm.invert(k), inverse[k]);
+        }
+        inverseInto(forward, check);
+        assertArrayEquals(inverse, check);
+        Permutation copy = new Permutation(forward, az);
+        for (int k = 0; k < 26; k += 1) {
+            assertEquals(perm.permute(k), copy.permute(k));
+            assertEquals(perm.invert(k), copy.invert(k));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotPermutation() {
+        new Permutation(new int[] { 0, 0, 1 }, new Alphabet("ABC"));
+    }
+}
@@ -0,0 +1,463 @@
+package enigma;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A three-stage version of Main's byte-oriented processing, in which a
+ *  reader thread splits the input into chunks of lines, one or more
+ *  worker threads convert them, and the calling thread writes the
+ *  results, so that input, conversion and output overlap.
+ *
+ *  Each worker has its own copy of the machine.  Because a message block
+ *  must be converted in order by one machine, the reader hands chunks to
+ *  the workers in turn, moving to the next worker only at the start of a
+ *  block, and the writer collects them in the same order, so the output
+ *  is exactly as Main would produce.  The stages are connected by
+ *  single-producer, single-consumer ring buffers, and a fixed set of
+ *  chunks circulates from the reader through a worker and the writer and
+ *  back, so that a steady stream of ordinary lines allocates nothing.
+ *  An error (in the input or in conversion) is reported by the writer
+ *  after it has written everything before the failing line.
+ *  @author MS
+ */
+class Pipeline {
+
+    /** A pipeline converting with NUMWORKERS copies of MACHINE, which must
+     *  have a single-byte alphabet and no rotors inserted.  Block
+     *  statistics are added to STATS when the pipeline finishes. */
+    Pipeline(Machine machine, int numWorkers, BlockStats stats) {
+        _stats = stats;
+        _workers = new Worker[numWorkers];
+        for (int w = 0; w < numWorkers; w += 1) {
+            _workers[w] = new Worker(machine.copy());
+        }
+        int chunks = 2 * numWorkers * RING_SIZE;
+        _free = new RingBuffer<>(Integer.highestOneBit(2 * chunks - 1));
+        for (int k = 0; k < _free.capacity(); k += 1) {
+            _free.offer(new Chunk());
+        }
+    }
+
+    /** Convert the lines of IN as Main does, writing the results to
+     *  OUTPUT. */
+    void run(InputStream in, PrintStream output) {
+        Thread reader = new Thread(() -> read(in), "enigma-reader");
+        reader.setDaemon(true);
+        reader.start();
+        Thread[] threads = new Thread[_workers.length];
+        for (int w = 0; w < _workers.length; w += 1) {
+            threads[w] = new Thread(_workers[w], "enigma-worker");
+            threads[w].setDaemon(true);
+            threads[w].start();
+        }
+        try {
+            write(output);
+        } finally {
+            _cancelled = true;
+            output.flush();
+            join(threads);
+            for (Worker worker : _workers) {
+                _stats.add(worker._stats);
+            }
+        }
+    }
+
+    /** Return the number of bytes my workers allocated while converting,
+     *  or -1 if this JVM cannot tell or they have not finished. */
+    long allocatedBytes() {
+        long total = 0;
+        for (Worker worker : _workers) {
+            if (worker._allocated < 0) {
+                return -1;
+            }
+            total += worker._allocated;
+        }
+        return total;
+    }
+
+    /** Wait for the worker THREADS to finish, which they do promptly once
+     *  _cancelled is set.  (The reader is not waited for, since it may be
+     *  blocked reading input that will never be used.) */
+    private static void join(Thread[] threads) {
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Body of the reader thread: divide the lines of IN into chunks and
+     *  pass them to the workers in turn. */
+    private void read(InputStream in) {
+        LineReader lines = new LineReader(in);
+        boolean started = false;
+        int w = 0;
+        Chunk chunk = take(_free);
+        try {
+            while (chunk != null && lines.next()) {
+                byte[] buf = lines.buffer();
+                int off = lines.start(), len = lines.length();
+                byte kind;
+                if (!started) {
+                    kind = len == 0 ? ECHO : SETTINGS;
+                } else {
+                    kind = Main.isSettingsLine(buf, off, len) ? SETTINGS
+                        : MESSAGE;
+                }
+                started |= kind == SETTINGS;
+                if (kind == SETTINGS && chunk.length >= GROUP_BYTES) {
+                    chunk.endsGroup = true;
+                    if (!put(_workers[w]._in, chunk)) {
+                        return;
+                    }
+                    w = (w + 1) % _workers.length;
+                    chunk = take(_free);
+                } else if (!chunk.fits(len) && chunk.lines > 0) {
+                    if (!put(_workers[w]._in, chunk)) {
+                        return;
+                    }
+                    chunk = take(_free);
+                }
+                if (chunk != null) {
+                    chunk.add(kind, buf, off, len);
+                }
+            }
+        } catch (RuntimeException excp) {
+            chunk.error = failure(excp);
+        }
+        if (chunk != null) {
+            chunk.last = true;
+            put(_workers[w]._in, chunk);
+        }
+    }
+
+    /** Write the chunks converted by the workers to OUTPUT, in the order
+     *  in which the reader issued them, and return them for reuse. */
+    private void write(PrintStream output) {
+        int w = 0;
+        while (true) {
+            Chunk chunk = take(_workers[w]._out);
+            output.write(chunk.out, 0, chunk.outLength);
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+            boolean last = chunk.last, endsGroup = chunk.endsGroup;
+            chunk.clear();
+            _free.offer(chunk);
+            if (last) {
+                return;
+            }
+            if (endsGroup) {
+                w = (w + 1) % _workers.length;
+            }
+        }
+    }
+
+    /** Add ITEM to RING, waiting while it is full.  Return false if the
+     *  pipeline was cancelled first. */
+    private <T> boolean put(RingBuffer<T> ring, T item) {
+        for (int spins = 0; !ring.offer(item); spins += 1) {
+            if (_cancelled) {
+                return false;
+            }
+            backOff(spins);
+        }
+        return true;
+    }
+
+    /** Remove and return an item from RING, waiting while it is empty.
+     *  Return null if the pipeline was cancelled first. */
+    private <T> T take(RingBuffer<T> ring) {
+        for (int spins = 0; true; spins += 1) {
+            T item = ring.poll();
+            if (item != null) {
+                return item;
+            }
+            if (_cancelled) {
+                return null;
+            }
+            backOff(spins);
+        }
+    }
+
+    /** Return EXCP as an EnigmaException, to be reported by the writer
+     *  rather than silently ending a stage. */
+    private static EnigmaException failure(RuntimeException excp) {
+        if (excp instanceof EnigmaException) {
+            return (EnigmaException) excp;
+        }
+        return error("internal error: %s", excp);
+    }
+
+    /** Wait briefly before the (SPINS+1)st retry of a ring operation:
+     *  spin at first, then yield the processor, then sleep. */
+    private static void backOff(int spins) {
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (spins < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** A batch of input lines and, once converted, their output. */
+    private static class Chunk {
+
+        /** Return true iff a line of LEN bytes can be added without
+         *  enlarging my buffers. */
+        boolean fits(int len) {
+            return lines < starts.length && length + len <= in.length;
+        }
+
+        /** Add the line of KIND whose LEN bytes are BUF[OFF ..], enlarging
+         *  my buffers if needed. */
+        void add(byte kind, byte[] buf, int off, int len) {
+            if (!fits(len)) {
+                in = Arrays.copyOf(in, Math.max(2 * in.length,
+                                                length + len));
+                out = new byte[outputSize(in.length)];
+            }
+            System.arraycopy(buf, off, in, length, len);
+            kinds[lines] = kind;
+            starts[lines] = length;
+            lengths[lines] = len;
+            lines += 1;
+            length += len;
+        }
+
+        /** Make me empty. */
+        void clear() {
+            lines = length = outLength = 0;
+            endsGroup = last = false;
+            error = null;
+        }
+
+        /** Bytes of my lines, without terminators. */
+        private byte[] in = new byte[CHUNK_BYTES];
+
+        /** Kind (ECHO, SETTINGS or MESSAGE) of each line. */
+        private final byte[] kinds = new byte[CHUNK_LINES];
+
+        /** Start in IN and length of each line. */
+        private final int[] starts = new int[CHUNK_LINES],
+            lengths = new int[CHUNK_LINES];
+
+        /** Number of lines, and number of bytes of IN used. */
+        private int lines, length;
+
+        /** Formatted output of my lines. */
+        private byte[] out = new byte[outputSize(CHUNK_BYTES)];
+
+        /** Number of bytes of OUT used. */
+        private int outLength;
+
+        /** True iff the next chunk goes to the next worker. */
+        private boolean endsGroup;
+
+        /** True iff I end the input. */
+        private boolean last;
+
+        /** The error that ends the input at my last line, if any. */
+        private EnigmaException error;
+    }
+
+    /** Return the space needed for the output of a chunk with INBYTES
+     *  bytes of input. */
+    private static int outputSize(int inBytes) {
+        return inBytes + inBytes / 5 + CHUNK_LINES * NEWLINE.length;
+    }
+
+    /** One conversion stage, with its own machine. */
+    private class Worker implements Runnable {
+
+        /** A worker converting with MACHINE. */
+        Worker(Machine machine) {
+            _machine = machine;
+            _cache = new SettingsCache(machine, machine.rotorSlots(),
+                                       SettingsCache.DEFAULT_CAPACITY);
+        }
+
+        @Override
+        public void run() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long before = Bench.allocatedBytes(threads);
+            _recorder = Metrics.recorder();
+            try {
+                while (true) {
+                    Chunk chunk = take(_in);
+                    if (chunk == null) {
+                        return;
+                    }
+                    try {
+                        convert(chunk);
+                    } catch (RuntimeException excp) {
+                        chunk.error = failure(excp);
+                    }
+                    if (!put(_out, chunk) || chunk.last) {
+                        return;
+                    }
+                }
+            } finally {
+                if (_recorder != null) {
+                    _recorder.flush();
+                }
+                if (before >= 0) {
+                    _allocated = Bench.allocatedBytes(threads) - before;
+                }
+            }
+        }
+
+        /** Convert the lines of CHUNK into its output, stopping at the
+         *  first error. */
+        private void convert(Chunk chunk) {
+            for (int i = 0; i < chunk.lines; i += 1) {
+                int off = chunk.starts[i], len = chunk.lengths[i];
+                boolean timed = _recorder != null && _recorder.sampling();
+                long start = timed ? System.nanoTime() : 0;
+                switch (chunk.kinds[i]) {
+                case SETTINGS:
+                    endBlock();
+                    setUp(chunk.in, off, len);
+                    _stats.startBlock();
+                    if (_blockEvent == null && Main.recording()) {
+                        _blockEvent = new MessageBlockEvent();
+                    }
+                    if (_blockEvent != null) {
+                        _blockEvent.begin();
+                    }
+                    _inBlock = true;
+                    break;
+                case MESSAGE:
+                    int n = _machine.convert(chunk.in, off, len, chunk.in,
+                                             off);
+                    long converted = timed ? System.nanoTime() : 0;
+                    _stats.addMessage(n);
+                    chunk.outLength = Main.formatLine(chunk.in, off, n,
+                                                      chunk.out,
+                                                      chunk.outLength);
+                    if (_recorder != null) {
+                        _recorder.message(n);
+                        if (timed) {
+                            _recorder.timing(start, converted,
+                                             System.nanoTime());
+                        }
+                    }
+                    break;
+                default:
+                    chunk.outLength = Main.formatLine(chunk.in, off, 0,
+                                                      chunk.out,
+                                                      chunk.outLength);
+                    break;
+                }
+            }
+            if (chunk.endsGroup || chunk.last) {
+                endBlock();
+            }
+        }
+
+        /** Set up my machine from the settings line in the LEN bytes
+         *  BUF[OFF ..], looked up as bytes so that a line already seen
+         *  is applied without allocating. */
+        private void setUp(byte[] buf, int off, int len) {
+            boolean timed = Metrics.enabled();
+            long start = timed ? System.nanoTime() : 0;
+            _machine.setUp(_cache.get(buf, off, len));
+            if (timed) {
+                Metrics.get().recordSettings(System.nanoTime() - start);
+            }
+        }
+
+        /** Finish the current block, if any. */
+        private void endBlock() {
+            if (!_inBlock) {
+                return;
+            }
+            _inBlock = false;
+            _stats.endBlock();
+            if (_blockEvent != null && _blockEvent.shouldCommit()) {
+                _blockEvent.block = _stats.blocks() - 1;
+                _blockEvent.rotorOrder = Main.rotorOrder(_machine);
+                _blockEvent.messages = (int) _stats.lastBlockMessages();
+                _blockEvent.chars = _stats.lastBlockChars();
+                _blockEvent.commit();
+                _blockEvent = new MessageBlockEvent();
+            }
+        }
+
+        /** My machine. */
+        private final Machine _machine;
+
+        /** Parsed settings lines for _machine. */
+        private final SettingsCache _cache;
+
+        /** True iff a block has started and not yet been ended. */
+        private boolean _inBlock;
+
+        /** Statistics for the blocks I convert. */
+        private final BlockStats _stats = new BlockStats();
+
+        /** Flight recorder event for my current block, or null if none
+         *  has been needed (see Main.recording). */
+        private MessageBlockEvent _blockEvent;
+
+        /** Records my message lines, or null if metrics are off. */
+        private Metrics.Recorder _recorder;
+
+        /** Bytes my thread allocated while running, or -1 if unknown or
+         *  I have not finished. */
+        private long _allocated = -1;
+
+        /** Chunks from the reader. */
+        private final RingBuffer<Chunk> _in = new RingBuffer<>(RING_SIZE);
+
+        /** Converted chunks for the writer. */
+        private final RingBuffer<Chunk> _out = new RingBuffer<>(RING_SIZE);
+    }
+
+    /** Kinds of input line: a blank line before the first settings line,
+     *  a settings line, and a message line. */
+    private static final byte ECHO = 0, SETTINGS = 1, MESSAGE = 2;
+
+    /** Initial bytes and maximum lines in a chunk. */
+    private static final int CHUNK_BYTES = 1 << 15, CHUNK_LINES = 1 << 10;
+
+    /** A chunk holding at least this many bytes is passed on at the next
+     *  settings line, so that another worker takes the next block. */
+    private static final int GROUP_BYTES = CHUNK_BYTES / 2;
+
+    /** Capacity of each worker's input and output rings. */
+    private static final int RING_SIZE = 4;
+
+    /** Number of retries for which a waiting stage spins, and after
+     *  which it sleeps rather than yielding. */
+    private static final int SPIN_LIMIT = 16, YIELD_LIMIT = 64;
+
+    /** Time a waiting stage sleeps between retries. */
+    private static final long PARK_NANOS = 50_000;
+
+    /** Line separator written after each output line. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /** Statistics to which the workers' statistics are added. */
+    private final BlockStats _stats;
+
+    /** The conversion stages. */
+    private final Worker[] _workers;
+
+    /** Chunks not in use. */
+    private final RingBuffer<Chunk> _free;
+
+    /** Set when the pipeline finishes or fails, to stop all stages. */
+    private volatile boolean _cancelled;
+}
@@ -0,0 +1,120 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author MS
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines for the naval machine. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* B Beta I IV III ZZZZ",
+        "  *   B Beta IV I III QWER (AB)",
+    };
+
+    /** Return NUMBLOCKS random message blocks, each of up to MAXLINES
+     *  lines, preceded by a blank line. */
+    private String input(int numBlocks, int maxLines) {
+        Random rand = new Random(numBlocks);
+        StringBuilder result = new StringBuilder("\n");
+        for (int b = 0; b < numBlocks; b += 1) {
+            result.append(SETTINGS[rand.nextInt(SETTINGS.length)])
+                .append('\n');
+            for (int k = rand.nextInt(maxLines + 1); k > 0; k -= 1) {
+                for (int i = rand.nextInt(80); i > 0; i -= 1) {
+                    result.append(i % 7 == 0 ? ' '
+                                  : UPPER_STRING.charAt(rand.nextInt(26)));
+                }
+                result.append(b % 2 == 0 ? "\n" : "\r\n");
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the output Main would produce for INPUT, which has no
+     *  errors and whose lines are all terminated. */
+    private String expected(String input) {
+        Machine mach = navalMachine().copy();
+        SettingsCache cache = new SettingsCache(mach, 5, 4);
+        StringBuilder result = new StringBuilder();
+        boolean started = false;
+        for (String line : input.split("\r?\n")) {
+            if (line.isEmpty() && !started) {
+                result.append(System.lineSeparator());
+            } else if (Main.isSettingsLine(line)) {
+                mach.setUp(cache.get(line));
+                started = true;
+            } else {
+                result.append(Main.format(mach.convert(line)))
+                    .append(System.lineSeparator());
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the output of a pipeline with NUMWORKERS workers for INPUT,
+     *  and the error it reported (if any) in ERROR[0]. */
+    private String run(String input, int numWorkers, String[] error) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BlockStats stats = new BlockStats();
+        try {
+            new Pipeline(navalMachine(), numWorkers, stats)
+                .run(new ByteArrayInputStream(input.getBytes()),
+                     new PrintStream(out));
+        } catch (EnigmaException excp) {
+            error[0] = excp.getMessage();
+        }
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesSequential() {
+        for (String input : new String[] { input(2000, 3),
+                                           input(40, 2000), "" }) {
+            String expect = input.isEmpty() ? "" : expected(input);
+            for (int workers = 1; workers <= 3; workers += 1) {
+                String[] error = new String[1];
+                assertEquals(expect, run(input, workers, error));
+                assertNull(error[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testCarriageReturns() {
+        String input = input(200, 3);
+        String crOnly = input.replace("\r\n", "\n").replace('\n', '\r');
+        String[] error = new String[1];
+        assertEquals(expected(input), run(crOnly, 2, error));
+        assertNull(error[0]);
+    }
+
+    @Test
+    public void testError() {
+        String input = SETTINGS[0] + "\nFROM HIS\nSHOULDER\nhiawatha\nABC\n";
+        String[] error = new String[1];
+        String nl = System.lineSeparator();
+        assertEquals("QVPQS OK" + nl + "OILPU BKJ" + nl,
+                     run(input, 2, error));
+        assertEquals("invalid message for alphabet.", error[0]);
+    }
+}
@@ -5,7 +5,7 @@ import static enigma.EnigmaException.*;
 /** Class that represents a reflector in the enigma.
  *  @author PNH, MS
  */
-class Reflector extends FixedRotor {
+final class Reflector extends FixedRotor {
 
     /** A non-moving rotor named NAME whose permutation at the 0 setting
      * is PERM. */
@@ -15,6 +15,11 @@ class Reflector extends FixedRotor {
     }
 
 
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation());
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
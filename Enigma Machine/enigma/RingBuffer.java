@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded queue for exactly one producer thread and one consumer
+ *  thread.  Its slots are allocated once, and neither offer nor poll
+ *  allocates, locks or blocks: each returns at once, reporting whether
+ *  it succeeded.  Each side caches the other's counter and rereads it
+ *  only when the queue looks full or empty.
+ *  @author MS
+ *  @param <T> the type of item queued.
+ */
+class RingBuffer<T> {
+
+    /** A queue of at most CAPACITY items, which must be a power of 2. */
+    RingBuffer(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw error("ring buffer capacity must be a power of 2");
+        }
+        _slots = new Object[capacity];
+        _mask = capacity - 1;
+    }
+
+    /** Add ITEM at the tail, returning false (and doing nothing) if I am
+     *  full.  Called only by the producer. */
+    boolean offer(T item) {
+        long tail = _tail.get();
+        if (tail - _headCache >= _slots.length) {
+            _headCache = _head.get();
+            if (tail - _headCache >= _slots.length) {
+                return false;
+            }
+        }
+        _slots[(int) tail & _mask] = item;
+        _tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /** Remove and return the item at the head, or return null if I am
+     *  empty.  Called only by the consumer. */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long head = _head.get();
+        if (head >= _tailCache) {
+            _tailCache = _tail.get();
+            if (head >= _tailCache) {
+                return null;
+            }
+        }
+        int k = (int) head & _mask;
+        T item = (T) _slots[k];
+        _slots[k] = null;
+        _head.lazySet(head + 1);
+        return item;
+    }
+
+    /** Return the maximum number of items I hold. */
+    int capacity() {
+        return _slots.length;
+    }
+
+    /** The queued items, at indices head..tail-1 modulo capacity. */
+    private final Object[] _slots;
+
+    /** Mask reducing a counter to a slot index. */
+    private final int _mask;
+
+    /** Number of items ever removed; written only by the consumer. */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Number of items ever added; written only by the producer. */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /** The producer's last reading of _head. */
+    private long _headCache;
+
+    /** The consumer's last reading of _tail. */
+    private long _tailCache;
+}
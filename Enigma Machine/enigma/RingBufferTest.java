@@ -0,0 +1,62 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RingBuffer class.
+ *  @author MS
+ */
+public class RingBufferTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFillAndDrain() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        assertNull(ring.poll());
+        for (int round = 0; round < 3; round += 1) {
+            for (int i = 0; i < 4; i += 1) {
+                assertTrue(ring.offer(round * 10 + i));
+            }
+            assertFalse(ring.offer(-1));
+            for (int i = 0; i < 4; i += 1) {
+                assertEquals(round * 10 + i, (int) ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCapacity() {
+        new RingBuffer<Integer>(6);
+    }
+
+    @Test
+    public void testTwoThreads() throws InterruptedException {
+        final int n = 100000;
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i += 1) {
+                while (!ring.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < n; i += 1) {
+            Integer item;
+            while ((item = ring.poll()) == null) {
+                Thread.yield();
+            }
+            assertEquals(i, (int) item);
+        }
+        producer.join();
+        assertNull(ring.poll());
+    }
+}
@@ -14,6 +14,11 @@ class Rotor {
         _setting = 0;
     }
 
+    /** Return a new rotor like me at setting 0. */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
     /** Return my name. */
     String name() {
         return _name;
@@ -75,7 +80,7 @@ class Rotor {
         result = _permutation.wrap(result - this._setting);
 
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         return result;
     }
@@ -89,7 +94,7 @@ class Rotor {
         result = _permutation.wrap(result - this._setting);
 
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
 
         return result;
@@ -107,14 +112,11 @@ class Rotor {
         return false;
     }
 
-
-    boolean isRotated() {
-        return _rotated;
+    /** Returns true iff I would be at a notch at setting POSN. */
+    boolean notchAt(int posn) {
+        return false;
     }
 
-    public void toggleRotated(boolean a) {
-        _rotated = a;
-    }
 
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
@@ -134,7 +136,4 @@ class Rotor {
     /** Setting of this rotor.*/
     private int _setting;
 
-    /** to prevent rotating twice.*/
-    private boolean _rotated = false;
-
 }
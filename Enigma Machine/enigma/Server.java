@@ -0,0 +1,315 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma simulator that loads its configurations once
+ *  and converts message blocks sent to it over a local socket, so that
+ *  many small jobs share one warmed-up JVM.
+ *
+ *  Each request on a connection is a frame consisting of
+ *      a configuration id (as by DataOutput.writeUTF),
+ *      a settings line (as by writeUTF), or an empty string to continue
+ *      with the machine for that id as this connection's previous
+ *      request for it left it,
+ *      an int N and N bytes of UTF-8 message text, each message line
+ *      being terminated by '\n'.
+ *  Each response is a status byte (OK or FAILED), an int N and N bytes
+ *  of UTF-8 text: on success, the converted and formatted lines, each
+ *  terminated by '\n'; otherwise the error message.  A connection ends
+ *  when the client closes it between frames.  A frame whose N is
+ *  negative or exceeds MAX_MESSAGE gets a FAILED response, after which
+ *  the server closes the connection.  Connections are served
+ *  concurrently, each on a virtual thread where the JDK has them.
+ *  @author MS
+ */
+public final class Server {
+
+    /** Serve the configurations named by ARGS[1..] at the address
+     *  ARGS[0], which is either "unix:PATH" for a Unix-domain socket or
+     *  "tcp:PORT" for a loopback TCP port.  Each configuration is
+     *  identified in requests by its name as given here. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs("--=(.*){2,}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Server ADDRESS CONFIG...");
+            }
+            List<String> names = options.get("--");
+            Server server = new Server();
+            for (String name : names.subList(1, names.size())) {
+                server.load(name, new File(name));
+            }
+            server.serve(server.bind(names.get(0)));
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Read the configuration in FILE, to be requested as ID. */
+    void load(String id, File file) {
+        try (Scanner config = new Scanner(file)) {
+            _configs.put(id, new Config(Main.configure(config)));
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return a channel listening at ADDRESS, as described for main.  A
+     *  TCP port of 0 chooses any free port.  A Unix-domain socket left
+     *  at the path by a server that has exited is replaced; any other
+     *  file there is an error. */
+    ServerSocketChannel bind(String address) {
+        try {
+            ServerSocketChannel channel;
+            SocketAddress local;
+            if (address.startsWith("unix:")) {
+                Path path = Path.of(address.substring(5));
+                removeStaleSocket(path);
+                channel =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                local = UnixDomainSocketAddress.of(path);
+            } else if (address.startsWith("tcp:")) {
+                channel = ServerSocketChannel.open();
+                local = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                              Integer.parseInt(address.substring(4)));
+            } else {
+                throw error("bad server address: %s", address);
+            }
+            channel.bind(local);
+            return channel;
+        } catch (IOException | NumberFormatException excp) {
+            throw error("could not listen at %s", address);
+        }
+    }
+
+    /** Delete the Unix-domain socket at PATH if no server is listening
+     *  on it.  Does nothing if PATH does not exist, and fails if it is
+     *  not a socket or is in use. */
+    private static void removeStaleSocket(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                                              LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException excp) {
+            return;
+        }
+        if (!attributes.isOther()) {
+            throw error("%s exists and is not a socket", path);
+        }
+        try (SocketChannel probe =
+             SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            throw error("%s is in use by another server", path);
+        } catch (ConnectException excp) {
+            Files.delete(path);
+        }
+    }
+
+    /** Accept connections on LISTENER until it is closed, handling each
+     *  on a thread of its own. */
+    void serve(ServerSocketChannel listener) {
+        ExecutorService handlers = newHandlerExecutor();
+        try {
+            while (true) {
+                SocketChannel client = listener.accept();
+                handlers.execute(() -> handle(client));
+            }
+        } catch (IOException excp) {
+            if (listener.isOpen()) {
+                throw error("server failed: %s", excp.getMessage());
+            }
+        } finally {
+            handlers.shutdown();
+        }
+    }
+
+    /** Answer requests on CLIENT until it closes. */
+    private void handle(SocketChannel client) {
+        Map<String, Session> sessions = new HashMap<>();
+        try (client) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+            while (true) {
+                String id;
+                try {
+                    id = in.readUTF();
+                } catch (EOFException excp) {
+                    break;
+                }
+                String settings = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_MESSAGE) {
+                    respond(out, FAILED,
+                          String.format("bad message length %d", length)
+                          .getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                byte[] message = new byte[length];
+                in.readFully(message);
+                byte status;
+                byte[] reply;
+                try {
+                    Session session = sessions.get(id);
+                    if (session == null) {
+                        session = checkOut(id);
+                        sessions.put(id, session);
+                    }
+                    reply = session.convert(settings, message);
+                    status = OK;
+                } catch (EnigmaException excp) {
+                    reply = excp.getMessage().getBytes(StandardCharsets.UTF_8);
+                    status = FAILED;
+                }
+                respond(out, status, reply);
+            }
+        } catch (IOException excp) {
+            /* The client went away; nothing more to do for it. */
+        } finally {
+            for (Map.Entry<String, Session> e : sessions.entrySet()) {
+                _configs.get(e.getKey()).idle.add(e.getValue());
+            }
+        }
+    }
+
+    /** Send a response with STATUS and text REPLY on OUT. */
+    private static void respond(DataOutputStream out, byte status,
+                                byte[] reply) throws IOException {
+        out.writeByte(status);
+        out.writeInt(reply.length);
+        out.write(reply);
+        out.flush();
+    }
+
+    /** Return an idle session for configuration ID, creating one if
+     *  needed. */
+    private Session checkOut(String id) {
+        Config config = _configs.get(id);
+        if (config == null) {
+            throw error("unknown configuration %s", id);
+        }
+        Session result = config.idle.poll();
+        if (result == null) {
+            result = new Session(config.machine.copy());
+        }
+        result._setUp = false;
+        return result;
+    }
+
+    /** Return an executor that runs each task on a new virtual thread
+     *  if this JDK supports them, and otherwise on a pooled platform
+     *  thread. */
+    static ExecutorService newHandlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Status byte of a successful response. */
+    static final byte OK = 0;
+
+    /** Status byte of a response carrying an error message. */
+    static final byte FAILED = 1;
+
+    /** Largest message text, in bytes, that a request may carry. */
+    static final int MAX_MESSAGE = 1 << 26;
+
+    /** A loaded configuration. */
+    private static class Config {
+        /** A configuration whose machine is MACHINE. */
+        Config(Machine machine) {
+            this.machine = machine;
+        }
+
+        /** Prototype machine, copied for each new session. */
+        private final Machine machine;
+
+        /** Sessions not in use by any connection. */
+        private final Queue<Session> idle = new ConcurrentLinkedQueue<>();
+    }
+
+    /** A machine and its settings cache, used by one connection at a
+     *  time and then kept for reuse. */
+    private static class Session {
+        /** A session converting with MACHINE. */
+        Session(Machine machine) {
+            _machine = machine;
+            _cache = new SettingsCache(machine, machine.rotorSlots(),
+                                       SettingsCache.DEFAULT_CAPACITY);
+        }
+
+        /** Return the formatted conversion of the lines of MESSAGE
+         *  (UTF-8, each line terminated by '\n') under SETTINGS, or
+         *  continuing from the previous conversion if SETTINGS is
+         *  empty. */
+        byte[] convert(String settings, byte[] message) {
+            if (!settings.isEmpty()) {
+                _setUp = false;
+                _machine.setUp(_cache.get(settings));
+                _setUp = true;
+            } else if (!_setUp) {
+                throw error("message has no settings line");
+            }
+            String text = new String(message, StandardCharsets.UTF_8);
+            StringBuilder result = new StringBuilder();
+            int start = 0;
+            for (int end = text.indexOf('\n'); end >= 0;
+                 end = text.indexOf('\n', start)) {
+                String line = text.substring(start, end);
+                result.append(Main.format(_machine.convert(line)));
+                result.append('\n');
+                start = end + 1;
+            }
+            return result.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        /** My machine. */
+        private final Machine _machine;
+
+        /** Parsed settings lines for _machine. */
+        private final SettingsCache _cache;
+
+        /** True iff _machine has been set up since it was checked out. */
+        private boolean _setUp;
+    }
+
+    /** Loaded configurations by id. */
+    private final Map<String, Config> _configs = new HashMap<>();
+}
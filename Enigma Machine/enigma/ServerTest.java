@@ -0,0 +1,226 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server and Client classes.
+ *  @author MS
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a temporary configuration file with some naval rotors. */
+    private File config() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(file)) {
+            out.print(NAVAL_CONFIG);
+        }
+        return file;
+    }
+
+    /** Start a daemon thread serving SERVER's configurations on
+     *  LISTENER. */
+    private void startServing(Server server, ServerSocketChannel listener) {
+        Thread serving = new Thread(() -> server.serve(listener));
+        serving.setDaemon(true);
+        serving.start();
+    }
+
+    /** Return the TCP port on which LISTENER listens. */
+    private int port(ServerSocketChannel listener) throws IOException {
+        return ((InetSocketAddress) listener.getLocalAddress()).getPort();
+    }
+
+    /** Return the output of PROCESSOR on INPUT, followed by the message
+     *  of any error it raised. */
+    private String transcript(Processor processor, String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(out);
+        String error = "";
+        try {
+            processor.process(new Scanner(input), output);
+        } catch (EnigmaException excp) {
+            error = "Error: " + excp.getMessage();
+        }
+        output.flush();
+        return out.toString() + error;
+    }
+
+    /** Something that converts input as Main does. */
+    private interface Processor {
+        /** Convert INPUT, writing the results to OUTPUT. */
+        void process(Scanner input, PrintStream output);
+    }
+
+    /** Settings for the message in testRoundTrip. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Server server = new Server();
+        server.load("naval", config());
+        ServerSocketChannel listener = server.bind("tcp:0");
+        startServing(server, listener);
+        try (Client client = new Client("tcp:" + port(listener))) {
+            for (int i = 0; i < 2; i += 1) {
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n\n",
+                             client.convert("naval", SETTINGS,
+                                            "FROM HIS SHOULDER HIAWATHA\n\n"));
+            }
+            try {
+                client.convert("naval", "* B Beta III IV X AXLE", "A\n");
+                fail("bad settings accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("unknown rotor X"));
+            }
+            assertEquals("", client.convert("naval", SETTINGS, ""));
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testBadMessageLength() throws IOException {
+        Server server = new Server();
+        server.load("naval", config());
+        ServerSocketChannel listener = server.bind("tcp:0");
+        startServing(server, listener);
+        try {
+            for (int length : new int[] { -1, Server.MAX_MESSAGE + 1 }) {
+                InetSocketAddress local = new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port(listener));
+                try (SocketChannel channel = SocketChannel.open(local)) {
+                    DataOutputStream out = new DataOutputStream(
+                        Channels.newOutputStream(channel));
+                    DataInputStream in = new DataInputStream(
+                        Channels.newInputStream(channel));
+                    out.writeUTF("naval");
+                    out.writeUTF(SETTINGS);
+                    out.writeInt(length);
+                    out.flush();
+                    assertEquals(Server.FAILED, in.readByte());
+                    byte[] reply = new byte[in.readInt()];
+                    in.readFully(reply);
+                    assertEquals("bad message length " + length,
+                                 new String(reply, "UTF-8"));
+                    try {
+                        in.readByte();
+                        fail("connection left open");
+                    } catch (EOFException excp) {
+                        /* Expected. */
+                    }
+                }
+            }
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testUnixSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path path = dir.resolve("server.sock");
+        String address = "unix:" + path;
+        Server server = new Server();
+        server.load("naval", config());
+        try {
+            ServerSocketChannel stale =
+                ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            stale.bind(UnixDomainSocketAddress.of(path));
+            stale.close();
+            assertTrue(Files.exists(path));
+            ServerSocketChannel listener = server.bind(address);
+            startServing(server, listener);
+            try (Client client = new Client(address)) {
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                             client.convert("naval", SETTINGS,
+                                            "FROM HIS SHOULDER HIAWATHA\n"));
+                try {
+                    server.bind(address);
+                    fail("live socket replaced");
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("in use"));
+                }
+            } finally {
+                listener.close();
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+        Files.writeString(path, "keep me");
+        try {
+            server.bind(address);
+            fail("regular file replaced");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("not a socket"));
+        } finally {
+            assertEquals("keep me", Files.readString(path));
+            Files.delete(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testMatchesMain() throws IOException {
+        Server server = new Server();
+        server.load("naval", config());
+        ServerSocketChannel listener = server.bind("tcp:0");
+        startServing(server, listener);
+        String[] inputs = {
+            SETTINGS + "\nFROMHISSHOULDERHIAWATHA\nHELLO1WORLD\nHELLO\n",
+            "\n" + SETTINGS + "\nFROM HIS\n\nSHOULDER\n" + SETTINGS
+            + "\n" + SETTINGS + "\nHIAWATHA\n",
+            SETTINGS + "\nHELLO\n* B Beta III IV X AXLE\nWORLD\n",
+        };
+        try {
+            for (String input : inputs) {
+                try (Client client = new Client("tcp:" + port(listener))) {
+                    String expected = transcript(
+                        (in, out) -> new Main(new Scanner(NAVAL_CONFIG), in,
+                                              out).process(), input);
+                    assertEquals(expected, transcript(
+                        (in, out) -> client.process("naval", in, out),
+                        input));
+                }
+            }
+            try (Client client = new Client("tcp:" + port(listener))) {
+                client.convert("naval", "", "HELLO\n");
+                fail("message without settings accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("no settings line"));
+            }
+        } finally {
+            listener.close();
+        }
+    }
+}
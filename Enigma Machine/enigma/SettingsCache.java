@@ -0,0 +1,136 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded, least-recently-used cache from settings lines to the
+ *  MachineSettings they describe.  Each cache belongs to a single
+ *  machine configuration, so the text of a line identifies its entry.
+ *  Lines may also be looked up as bytes, through a direct-mapped index
+ *  of recently used lines in front of the cache, so that a line found
+ *  there need not be decoded and its lookup allocates nothing.
+ *  @author MS
+ */
+class SettingsCache {
+
+    /** A cache of at most CAPACITY settings for MACHINE, whose settings
+     *  lines name NUMROTORS rotors. */
+    SettingsCache(Machine machine, int numRotors, int capacity) {
+        if (capacity < 1) {
+            throw error("settings cache capacity must be positive");
+        }
+        _alphabet = machine.alphabet();
+        _parser = new SettingsParser(machine, numRotors);
+        _capacity = capacity;
+        int slots = Integer.highestOneBit(2 * capacity - 1);
+        _recentBytes = new byte[slots][];
+        _recentHashes = new int[slots];
+        _recentSettings = new MachineSettings[slots];
+        _entries = new LinkedHashMap<String, MachineSettings>(16, 0.75f,
+                                                              true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, MachineSettings> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the settings described by LINE, parsing it only if it is not
+     *  already cached. */
+    MachineSettings get(String line) {
+        MachineSettings result = _entries.get(line);
+        if (result != null) {
+            _hits += 1;
+            return result;
+        }
+        _misses += 1;
+        _parser.parse(line);
+        result = new MachineSettings(_parser, _alphabet);
+        _entries.put(line, result);
+        return result;
+    }
+
+    /** Return the settings described by the settings line whose UTF-8
+     *  encoding is the LEN bytes LINE[OFF .. OFF+LEN-1], decoding and
+     *  looking it up as for get(String) only if it is not in my index of
+     *  recent lines. */
+    MachineSettings get(byte[] line, int off, int len) {
+        int hash = 1;
+        for (int i = off; i < off + len; i += 1) {
+            hash = 31 * hash + line[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (_recentBytes.length - 1);
+        byte[] recent = _recentBytes[slot];
+        if (recent != null && _recentHashes[slot] == hash
+            && Arrays.equals(recent, 0, recent.length,
+                             line, off, off + len)) {
+            _hits += 1;
+            return _recentSettings[slot];
+        }
+        MachineSettings result =
+            get(new String(line, off, len, StandardCharsets.UTF_8));
+        _recentBytes[slot] = Arrays.copyOfRange(line, off, off + len);
+        _recentHashes[slot] = hash;
+        _recentSettings[slot] = result;
+        return result;
+    }
+
+    /** Return the number of lookups satisfied from the cache. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that required parsing. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of cached lines. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the maximum number of cached lines. */
+    int capacity() {
+        return _capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("settings cache: %d hits, %d misses, %d/%d "
+                             + "entries", _hits, _misses, size(), _capacity);
+    }
+
+    /** Default number of entries used by Main. */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /** Alphabet of my machine. */
+    private final Alphabet _alphabet;
+
+    /** Parser used on cache misses. */
+    private final SettingsParser _parser;
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+
+    /** Cached settings, in access order. */
+    private final LinkedHashMap<String, MachineSettings> _entries;
+
+    /** Encodings of recently used lines, by slot; each line occupies the
+     *  slot given by its hash, displacing whatever was there. */
+    private final byte[][] _recentBytes;
+
+    /** Hashes of the lines in _recentBytes. */
+    private final int[] _recentHashes;
+
+    /** Settings of the lines in _recentBytes. */
+    private final MachineSettings[] _recentSettings;
+
+    /** Lookup counts. */
+    private long _hits, _misses;
+}
@@ -0,0 +1,273 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass parser for settings lines of the form
+ *      * REFLECTOR ROTOR ... POSITIONS [RINGS] (cc) (cc) ...
+ *  The results are left in buffers owned by the parser that are
+ *  overwritten by each call to parse, so that parsing a line allocates
+ *  nothing unless it is in error.  Errors are reported with the
+ *  (1-based) column at which they were detected.
+ *  @author MS
+ */
+class SettingsParser {
+
+    /** A parser for settings lines that choose NUMROTORS rotors from
+     *  those available in MACHINE. */
+    SettingsParser(Machine machine, int numRotors) {
+        _alphabet = machine.alphabet();
+        _names = new String[machine.numAvailableRotors()];
+        for (int k = 0; k < _names.length; k += 1) {
+            _names[k] = machine.availableRotor(k).name();
+        }
+        _rotors = new int[numRotors];
+        _positions = new int[numRotors - 1];
+        _rings = new int[numRotors - 1];
+        _plugboard = new int[_alphabet.size()];
+        _plugged = new boolean[_alphabet.size()];
+    }
+
+    /** Parse LINE, filling rotors(), positions(), rings() and
+     *  plugboard(). */
+    void parse(String line) {
+        _line = line;
+        _pos = 0;
+        _hasRings = false;
+        _plugCycles = 0;
+
+        skipBlanks();
+        if (_pos == line.length() || line.charAt(_pos) != '*') {
+            throw fail("settings line must start with '*'");
+        }
+        _pos += 1;
+        if (_pos < line.length() && !isBlank(line.charAt(_pos))) {
+            throw fail("expected whitespace after '*'");
+        }
+
+        for (int i = 0; i < _rotors.length; i += 1) {
+            int start = nextToken();
+            if (start < 0 || line.charAt(start) == '(') {
+                throw failAt(start < 0 ? _pos : start,
+                             "expected %d rotor names", _rotors.length);
+            }
+            int k = rotorIndex(start, _pos);
+            if (k < 0) {
+                throw failAt(start, "unknown rotor %s",
+                             line.substring(start, _pos));
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (_rotors[j] == k) {
+                    throw failAt(start, "rotor %s repeated", _names[k]);
+                }
+            }
+            _rotors[i] = k;
+        }
+
+        int start = nextToken();
+        if (start < 0 || line.charAt(start) == '(') {
+            throw failAt(start < 0 ? _pos : start,
+                         "expected rotor positions");
+        }
+        readSetting(start, _positions);
+
+        start = nextToken();
+        if (start >= 0 && line.charAt(start) != '(') {
+            readSetting(start, _rings);
+            _hasRings = true;
+            start = nextToken();
+        }
+
+        Arrays.fill(_plugged, false);
+        for (int c = 0; c < _plugboard.length; c += 1) {
+            _plugboard[c] = c;
+        }
+        _pos = start < 0 ? _pos : start;
+        while (true) {
+            skipBlanks();
+            if (_pos == line.length()) {
+                break;
+            }
+            if (line.charAt(_pos) != '(') {
+                throw fail("expected plugboard cycle");
+            }
+            readCycle();
+        }
+    }
+
+    /** Return the indices (as for Machine.availableRotor) of the rotors
+     *  selected by the last line parsed, reflector first. */
+    int[] rotors() {
+        return _rotors;
+    }
+
+    /** Return the alphabet indices of the initial rotor positions given
+     *  by the last line parsed, leftmost rotor first. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return true iff the last line parsed had a ring setting. */
+    boolean hasRings() {
+        return _hasRings;
+    }
+
+    /** Return the alphabet indices of the ring settings given by the last
+     *  line parsed.  Meaningful only if hasRings(). */
+    int[] rings() {
+        return _rings;
+    }
+
+    /** Return the plugboard given by the last line parsed, as the image
+     *  of each alphabet index. */
+    int[] plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the number of plugboard cycles in the last line parsed. */
+    int plugboardCycles() {
+        return _plugCycles;
+    }
+
+    /** Skip to the next token and then past it, returning the index of
+     *  its first character, or -1 if there is none. */
+    private int nextToken() {
+        skipBlanks();
+        if (_pos == _line.length()) {
+            return -1;
+        }
+        int start = _pos;
+        while (_pos < _line.length() && !isBlank(_line.charAt(_pos))) {
+            _pos += 1;
+        }
+        return start;
+    }
+
+    /** Advance past any whitespace. */
+    private void skipBlanks() {
+        while (_pos < _line.length() && isBlank(_line.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** Return the index of the available rotor named by the text of the
+     *  current line from START to END, or -1 if there is none. */
+    private int rotorIndex(int start, int end) {
+        for (int k = 0; k < _names.length; k += 1) {
+            String name = _names[k];
+            if (name.length() == end - start
+                && _line.regionMatches(start, name, 0, name.length())) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Read the token from START to the current position as one alphabet
+     *  character per rotor after the reflector into SETTING. */
+    private void readSetting(int start, int[] setting) {
+        if (_line.codePointCount(start, _pos) != setting.length) {
+            throw failAt(start, "setting must have %d characters",
+                         setting.length);
+        }
+        for (int i = 0, k = start; i < setting.length; i += 1) {
+            setting[i] = alphabetIndex(k);
+            k += Character.charCount(_line.codePointAt(k));
+        }
+    }
+
+    /** Read one parenthesized plugboard cycle starting at the current
+     *  position into the plugboard. */
+    private void readCycle() {
+        int open = _pos;
+        _pos += 1;
+        int first = -1, prev = -1;
+        while (_pos < _line.length() && _line.charAt(_pos) != ')') {
+            int c = alphabetIndex(_pos);
+            if (_plugged[c]) {
+                throw fail("%c is already on the plugboard",
+                           _line.codePointAt(_pos));
+            }
+            _plugged[c] = true;
+            if (prev < 0) {
+                first = c;
+            } else {
+                _plugboard[prev] = c;
+            }
+            prev = c;
+            _pos += Character.charCount(_line.codePointAt(_pos));
+        }
+        if (_pos == _line.length()) {
+            throw failAt(open, "unclosed plugboard cycle");
+        }
+        if (first < 0) {
+            throw failAt(open, "empty plugboard cycle");
+        }
+        _plugboard[prev] = first;
+        _pos += 1;
+        _plugCycles += 1;
+    }
+
+    /** Return the alphabet index of the character (code point) starting
+     *  at column K of the current line, which must be in the alphabet. */
+    private int alphabetIndex(int k) {
+        int c = _alphabet.indexOf(_line.codePointAt(k));
+        if (c < 0) {
+            throw failAt(k, "%c is not in the alphabet",
+                         _line.codePointAt(k));
+        }
+        return c;
+    }
+
+    /** Return true iff CH separates tokens. */
+    private static boolean isBlank(char ch) {
+        return Character.isWhitespace(ch);
+    }
+
+    /** Return an error for the current position described by MSGFORMAT
+     *  and ARGS, as for String.format. */
+    private EnigmaException fail(String msgFormat, Object... args) {
+        return failAt(_pos, msgFormat, args);
+    }
+
+    /** Return an error for column K (0-based) of the current line
+     *  described by MSGFORMAT and ARGS, as for String.format. */
+    private EnigmaException failAt(int k, String msgFormat, Object... args) {
+        return error("invalid settings line at column %d: %s", k + 1,
+                     String.format(msgFormat, args));
+    }
+
+    /** The alphabet of the machine being set. */
+    private final Alphabet _alphabet;
+
+    /** Names of the available rotors. */
+    private final String[] _names;
+
+    /** The line being parsed. */
+    private String _line;
+
+    /** Index of the next unread character of _line. */
+    private int _pos;
+
+    /** Rotor indices, reflector first. */
+    private final int[] _rotors;
+
+    /** Initial rotor positions. */
+    private final int[] _positions;
+
+    /** Ring settings, valid if _hasRings. */
+    private final int[] _rings;
+
+    /** True iff the last line had a ring setting. */
+    private boolean _hasRings;
+
+    /** Image of each alphabet index under the plugboard. */
+    private final int[] _plugboard;
+
+    /** True for each alphabet index already in a plugboard cycle. */
+    private final boolean[] _plugged;
+
+    /** Number of plugboard cycles read. */
+    private int _plugCycles;
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsParser class.
+ *  @author MS
+ */
+public class SettingsParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A parser for five-rotor settings lines over some naval rotors. */
+    private SettingsParser parser() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        for (String name : new String[] { "I", "II", "III" }) {
+            rotors.add(new MovingRotor(name,
+                                       new Permutation(NAVALA.get(name),
+                                                       UPPER), "Q"));
+        }
+        return new SettingsParser(new Machine(UPPER, 5, 3, rotors), 5);
+    }
+
+    /** Assert that parsing LINE fails at COLUMN. */
+    private void checkError(String line, int column) {
+        try {
+            parser().parse(line);
+            fail("no error for " + line);
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().contains("column " + column + ":"));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFullLine() {
+        SettingsParser p = parser();
+        p.parse("  * B Beta III I II  AXLE BCFG (YF) (HZ)(ABC)");
+        assertArrayEquals(new int[] { 0, 1, 4, 2, 3 }, p.rotors());
+        assertArrayEquals(new int[] { 0, 23, 11, 4 }, p.positions());
+        assertTrue(p.hasRings());
+        assertArrayEquals(new int[] { 1, 2, 5, 6 }, p.rings());
+        assertEquals(3, p.plugboardCycles());
+        int[] plug = p.plugboard();
+        String a = UPPER_STRING;
+        assertEquals(a.indexOf('F'), plug[a.indexOf('Y')]);
+        assertEquals(a.indexOf('Y'), plug[a.indexOf('F')]);
+        assertEquals(a.indexOf('B'), plug[a.indexOf('A')]);
+        assertEquals(a.indexOf('A'), plug[a.indexOf('C')]);
+        assertEquals(a.indexOf('Q'), plug[a.indexOf('Q')]);
+    }
+
+    @Test
+    public void testReuse() {
+        SettingsParser p = parser();
+        p.parse("* B Beta I II III AAAA BBBB (AB)");
+        p.parse("* B Beta I II III ZZZZ");
+        assertFalse(p.hasRings());
+        assertEquals(0, p.plugboardCycles());
+        assertArrayEquals(new int[] { 25, 25, 25, 25 }, p.positions());
+        assertEquals(0, p.plugboard()[0]);
+        assertEquals(1, p.plugboard()[1]);
+    }
+
+    @Test
+    public void testErrorColumns() {
+        checkError("B Beta I II III AAAA", 1);
+        checkError("* B Beta I II IV AAAA", 15);
+        checkError("* B Beta I I III AAAA", 12);
+        checkError("* B Beta I II III AAA", 19);
+        checkError("* B Beta I II III AAAA (AB) (BC)", 30);
+        checkError("* B Beta I II III AAAA (AB", 24);
+        checkError("* B Beta I II III AAAA (AB) x", 29);
+        checkError("* B Beta I II III AAaA", 21);
+    }
+}
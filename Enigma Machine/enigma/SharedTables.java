@@ -0,0 +1,303 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Rotor tables for a configuration, kept outside the heap in a
+ *  memory-mapped file that several processes share.  The first process
+ *  to use a configuration parses it and writes the tables; later ones
+ *  map the file read-only and build their machines directly over it, so
+ *  they skip parsing and their heaps do not hold the permutations of the
+ *  whole set of rotors.  (A machine does copy the tables of the rotors
+ *  inserted in it, since converting from heap arrays is faster, but
+ *  only into one buffer per rotor slot.)
+ *  The file records a fingerprint of the configuration's contents and is
+ *  rebuilt whenever that changes, or when it is found to be malformed
+ *  (for example, truncated): its size must agree with the counts in its
+ *  header and each of its tables must be a permutation, with the
+ *  inverse table its inverse.  It is replaced atomically, so processes
+ *  racing to build it each map a complete copy.
+ *
+ *  The file holds, in order (big-endian):
+ *      int MAGIC, int VERSION, long fingerprint,
+ *      int rotor slots, int pawls, int alphabet size N,
+ *      int entry width W (2 or 4), int number of rotors,
+ *      N ints giving the alphabet's code points,
+ *  and for each rotor
+ *      byte kind (FIXED, MOVING or REFLECTOR), the name and notches
+ *      (each an int length and UTF-8 bytes), padding to a multiple of
+ *      W, and the forward and inverse tables of N entries each.
+ *  @author MS
+ */
+class SharedTables {
+
+    /** Return a machine for the configuration in CONFIG whose rotor
+     *  tables are in the shared file TABLES.  If TABLES is missing, was
+     *  made from a different configuration or is malformed, it is first
+     *  rewritten from the machine returned by PARSE, which must read
+     *  CONFIG. */
+    static Machine machine(File tables, File config, Supplier<Machine> parse) {
+        long fingerprint = fingerprint(config);
+        ByteBuffer map = map(tables);
+        Machine result = null;
+        if (map != null && map.getLong(FINGERPRINT) == fingerprint) {
+            result = read(map);
+        }
+        if (result == null) {
+            write(tables, parse.get(), fingerprint);
+            map = map(tables);
+            result = map == null ? null : read(map);
+            if (result == null) {
+                throw error("could not map %s", tables);
+            }
+        }
+        return result;
+    }
+
+    /** Return a fingerprint of the contents of FILE. */
+    static long fingerprint(File file) {
+        try {
+            long h = FNV_BASIS;
+            for (byte b : Files.readAllBytes(file.toPath())) {
+                h = (h ^ (b & BYTE_MASK)) * FNV_PRIME;
+            }
+            return h;
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return FILE mapped read-only, or null if it does not exist or is
+     *  not a table file of my VERSION. */
+    private static ByteBuffer map(File file) {
+        Path path = file.toPath();
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                                       StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                return null;
+            }
+            return map;
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** Return a machine whose rotors use the tables in MAP, or null if
+     *  MAP is malformed. */
+    private static Machine read(ByteBuffer map) {
+        try {
+            return readTables(map);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Return a machine whose rotors use the tables in MAP, or null if
+     *  the sizes or tables in MAP are inconsistent.  Other malformations
+     *  may cause the exceptions caught by read. */
+    private static Machine readTables(ByteBuffer map) {
+        map.position(HEADER_SIZE - 5 * 4);
+        int slots = map.getInt(), pawls = map.getInt(), n = map.getInt(),
+            width = map.getInt(), numRotors = map.getInt();
+        if (n < 1 || width != (n <= Permutation.SHORT_LIMIT ? 2 : 4)
+            || numRotors < 0 || map.remaining() / 4 < n) {
+            return null;
+        }
+        int[] chars = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            chars[i] = map.getInt();
+        }
+        Alphabet alphabet = new Alphabet(new String(chars, 0, n));
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        int[] table = new int[n], inverseTable = new int[n],
+            scratch = new int[n];
+        for (int r = 0; r < numRotors; r += 1) {
+            byte kind = map.get();
+            String name = readString(map), notches = readString(map);
+            int forward = align(map.position(), width),
+                inverse = forward + n * width;
+            if (kind != FIXED && kind != MOVING && kind != REFLECTOR
+                || (long) inverse + n * width > map.limit()) {
+                return null;
+            }
+            map.position(inverse + n * width);
+            readEntries(map, forward, width, table);
+            readEntries(map, inverse, width, inverseTable);
+            if (!PermutationAlgebra.isPermutation(table, scratch)) {
+                return null;
+            }
+            for (int k = 0; k < n; k += 1) {
+                if (inverseTable[table[k]] != k) {
+                    return null;
+                }
+            }
+            Permutation perm = new Permutation(alphabet, map, forward,
+                                               inverse);
+            if (kind == REFLECTOR) {
+                rotors.add(new Reflector(name, perm));
+            } else if (kind == MOVING) {
+                rotors.add(new MovingRotor(name, perm, notches));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        if (map.hasRemaining()) {
+            return null;
+        }
+        return new Machine(alphabet, slots, pawls, rotors);
+    }
+
+    /** Store the N = OUT.length entries of WIDTH bytes at offset TABLE of
+     *  MAP in OUT. */
+    private static void readEntries(ByteBuffer map, int table, int width,
+                                    int[] out) {
+        for (int k = 0; k < out.length; k += 1) {
+            out[k] = width == 2 ? map.getShort(table + 2 * k)
+                : map.getInt(table + 4 * k);
+        }
+    }
+
+    /** Write the tables of MACHINE, parsed from a configuration with
+     *  FINGERPRINT, to FILE. */
+    private static void write(File file, Machine machine, long fingerprint) {
+        Path path = file.toPath().toAbsolutePath();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(path.getParent(),
+                                       path.getFileName().toString(), ".tmp");
+            Alphabet alphabet = machine.alphabet();
+            int n = alphabet.size();
+            int width = n <= Permutation.SHORT_LIMIT ? 2 : 4;
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(machine.rotorSlots());
+                out.writeInt(machine.numPawls());
+                out.writeInt(n);
+                out.writeInt(width);
+                out.writeInt(machine.numAvailableRotors());
+                for (int i = 0; i < n; i += 1) {
+                    out.writeInt(alphabet.toCodePoint(i));
+                }
+                for (int r = 0; r < machine.numAvailableRotors(); r += 1) {
+                    writeRotor(out, machine.availableRotor(r), width);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        } finally {
+            try {
+                if (tmp != null) {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException excp) {
+                /* Leave it; it is never read. */
+            }
+        }
+    }
+
+    /** Write ROTOR to OUT with table entries of WIDTH bytes. */
+    private static void writeRotor(DataOutputStream out, Rotor rotor,
+                                   int width) throws IOException {
+        byte kind = rotor.reflecting() ? REFLECTOR
+            : rotor.rotates() ? MOVING : FIXED;
+        out.writeByte(kind);
+        writeString(out, rotor.name());
+        writeString(out, kind == MOVING ? new String(rotor.notches()) : "");
+        while (out.size() % width != 0) {
+            out.writeByte(0);
+        }
+        Permutation perm = rotor.permutation();
+        for (int k = 0; k < perm.size(); k += 1) {
+            writeEntry(out, perm.permute(k), width);
+        }
+        for (int k = 0; k < perm.size(); k += 1) {
+            writeEntry(out, perm.invert(k), width);
+        }
+    }
+
+    /** Write table entry V of WIDTH bytes to OUT. */
+    private static void writeEntry(DataOutputStream out, int v, int width)
+        throws IOException {
+        if (width == 2) {
+            out.writeShort(v);
+        } else {
+            out.writeInt(v);
+        }
+    }
+
+    /** Write S to OUT as an int length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read a string written by writeString from the position of MAP.
+     *  Throws BufferUnderflowException if its length is not that of a
+     *  string within MAP. */
+    private static String readString(ByteBuffer map) {
+        int length = map.getInt();
+        if (length < 0 || length > map.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        map.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the least multiple of WIDTH that is at least POS. */
+    private static int align(int pos, int width) {
+        return (pos + width - 1) / width * width;
+    }
+
+    /** First word of a table file ("ENGT"). */
+    static final int MAGIC = 0x454E4754;
+
+    /** Layout version of table files. */
+    static final int VERSION = 1;
+
+    /** Offset of the fingerprint in a table file. */
+    private static final int FINGERPRINT = 8;
+
+    /** Size of the fixed part of a table file. */
+    private static final int HEADER_SIZE = 36;
+
+    /** Kinds of rotor. */
+    private static final byte FIXED = 0, MOVING = 1, REFLECTOR = 2;
+
+    /** Constants of the 64-bit FNV-1a hash. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** Mask converting a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+}
@@ -0,0 +1,161 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SharedTables class.
+ *  @author MS
+ */
+public class SharedTablesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Settings for CONFIG. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Number of times parse() has been called. */
+    private int _parses;
+
+    /** Return a machine parsed from FILE, counting the call. */
+    private Machine parse(File file) {
+        _parses += 1;
+        try (Scanner config = new Scanner(file)) {
+            return Main.configure(config);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Write TEXT to a new temporary file and return it. */
+    private File tempFile(String text) throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        return file;
+    }
+
+    /** Return the conversion of the naval test message by M. */
+    private String convert(Machine m) {
+        m.setUp(new SettingsCache(m, 5, 1).get(SETTINGS));
+        return m.convert("FROMHISSHOULDERHIAWATHA");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuildThenAttach() throws IOException {
+        File config = tempFile(CONFIG);
+        File tables = File.createTempFile("enigma", ".tables");
+        tables.delete();
+        tables.deleteOnExit();
+        Machine built =
+            SharedTables.machine(tables, config, () -> parse(config));
+        assertEquals(1, _parses);
+        assertTrue(tables.exists());
+        Machine attached =
+            SharedTables.machine(tables, config, () -> parse(config));
+        assertEquals(1, _parses);
+        assertEquals(5, attached.numAvailableRotors());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", convert(built));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", convert(attached));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", convert(attached.copy()));
+    }
+
+    @Test
+    public void testChangeRotors() throws IOException {
+        File config = tempFile(CONFIG);
+        File tables = File.createTempFile("enigma", ".tables");
+        tables.delete();
+        tables.deleteOnExit();
+        SharedTables.machine(tables, config, () -> parse(config));
+        Machine attached =
+            SharedTables.machine(tables, config, () -> parse(config));
+        Machine parsed = parse(config);
+        String[] settings = {
+            SETTINGS, "* B Beta IV I III AXLE", "* B Beta I III IV QQQQ",
+            SETTINGS,
+        };
+        for (String line : settings) {
+            attached.setUp(new SettingsCache(attached, 5, 1).get(line));
+            parsed.setUp(new SettingsCache(parsed, 5, 1).get(line));
+            assertEquals(line, parsed.convert("FROMHISSHOULDERHIAWATHA"),
+                         attached.convert("FROMHISSHOULDERHIAWATHA"));
+        }
+    }
+
+    @Test
+    public void testRebuildOnChange() throws IOException {
+        File config = tempFile(CONFIG);
+        File tables = File.createTempFile("enigma", ".tables");
+        tables.deleteOnExit();
+        SharedTables.machine(tables, config, () -> parse(config));
+        assertEquals(1, _parses);
+        File changed = tempFile(CONFIG.replace("(S)", ""));
+        SharedTables.machine(tables, changed, () -> parse(changed));
+        assertEquals(2, _parses);
+        SharedTables.machine(tables, changed, () -> parse(changed));
+        assertEquals(2, _parses);
+    }
+
+    @Test
+    public void testRebuildWhenMalformed() throws IOException {
+        File config = tempFile(CONFIG);
+        File tables = File.createTempFile("enigma", ".tables");
+        tables.deleteOnExit();
+        SharedTables.machine(tables, config, () -> parse(config));
+        byte[] good = Files.readAllBytes(tables.toPath());
+        byte[] duplicated = good.clone();
+        duplicated[good.length - 1] = duplicated[good.length - 3];
+        duplicated[good.length - 2] = duplicated[good.length - 4];
+        byte[] badLength = good.clone();
+        ByteBuffer.wrap(badLength).putInt(36 + 4 * 26 + 1, -1);
+        byte[][] corruptions = {
+            Arrays.copyOf(good, 300), duplicated, badLength,
+            Arrays.copyOf(good, good.length + 1),
+        };
+        for (int i = 0; i < corruptions.length; i += 1) {
+            Files.write(tables.toPath(), corruptions[i]);
+            Machine m =
+                SharedTables.machine(tables, config, () -> parse(config));
+            assertEquals(i + 2, _parses);
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW", convert(m));
+            assertArrayEquals(good, Files.readAllBytes(tables.toPath()));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testReadOnly() throws IOException {
+        File config = tempFile(CONFIG);
+        File tables = File.createTempFile("enigma", ".tables");
+        tables.deleteOnExit();
+        Machine m = SharedTables.machine(tables, config, () -> parse(config));
+        m.availableRotor(0).permutation().addCycle("(AB)");
+    }
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -18,6 +19,34 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return a five-rotor machine over UPPER with naval rotors B, Beta,
+     *  III, IV and I inserted, set to AXLE, with plugboard
+     *  (HQ) (EX) (IP) (TR) (BY).  It converts FROMHISSHOULDERHIAWATHA to
+     *  QVPQSOKOILPUBKJZPISFXDW. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"), UPPER),
+                                   "V"));
+        rotors.add(new MovingRotor("IV",
+                                   new Permutation(NAVALA.get("IV"), UPPER),
+                                   "J"));
+        rotors.add(new MovingRotor("I",
+                                   new Permutation(NAVALA.get("I"), UPPER),
+                                   "Q"));
+        Machine mach = new Machine(UPPER, 5, 3, rotors);
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors("AXLE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                          UPPER));
+        return mach;
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -39,6 +68,44 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the moving naval rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return the text of a configuration over UPPER_STRING with 5
+     *  slots and 3 pawls, describing the naval rotors named ROTORS in
+     *  their A setting.  B and C are reflectors, Beta and Gamma are
+     *  fixed, and the rest move with their usual notches. */
+    static String navalConfig(String... rotors) {
+        StringBuilder result = new StringBuilder(UPPER_STRING);
+        result.append("\n5 3\n");
+        for (String name : rotors) {
+            result.append(name).append(' ');
+            if (name.equals("B") || name.equals("C")) {
+                result.append('R');
+            } else if (name.equals("Beta") || name.equals("Gamma")) {
+                result.append('N');
+            } else {
+                result.append('M').append(NAVAL_NOTCHES.get(name));
+            }
+            result.append(' ').append(NAVALA.get(name)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** A configuration with the naval rotors used by navalMachine. */
+    static final String NAVAL_CONFIG =
+        navalConfig("I", "III", "IV", "Beta", "B");
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -16,7 +16,30 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                SettingsParserTest.class,
+                LatencyHistogramTest.class,
+                ServerTest.class,
+                EnigmaProcessorTest.class,
+                EnigmaStreamsTest.class,
+                LineReaderTest.class,
+                AlphabetTest.class,
+                SharedTablesTest.class,
+                RingBufferTest.class,
+                PipelineTest.class,
+                JournalTest.class,
+                GzipStreamsTest.class,
+                BatchTest.class,
+                AcceptanceTest.class,
+                BenchTest.class,
+                AllocationTest.class,
+                PermutationAlgebraTest.class,
+                CribFinderTest.class,
+                KeySweepTest.class,
+                KeystreamTest.class,
+                PeriodAnalyzerTest.class,
+                MainTest.class,
+                MetricsTest.class));
     }
 
 }